@@ -0,0 +1,40 @@
+package com.tommytony.war;
+
+import com.tommytony.war.struct.WarBlock;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+/**
+ * Places batches of blocks in a Bukkit world, looking up each chunk once and placing blocks without physics updates.
+ */
+class BukkitEditSession extends EditSession {
+    private final WarPlugin plugin;
+    private final World world;
+    private Chunk chunk;
+
+    BukkitEditSession(WarPlugin plugin, World world, boolean recordUndo) {
+        super(plugin, world.getName(), recordUndo);
+        this.plugin = plugin;
+        this.world = world;
+    }
+
+    @Override
+    protected void startChunk(int chunkX, int chunkZ) {
+        chunk = world.getChunkAt(chunkX, chunkZ);
+    }
+
+    @Override
+    protected void finishCommit() {
+        chunk = null;
+    }
+
+    @Override
+    protected WarBlock getBlock(int x, int y, int z) {
+        return plugin.getBlock(chunk.getBlock(x & 15, y, z & 15).getState(), false);
+    }
+
+    @Override
+    protected boolean placeBlock(int x, int y, int z, WarBlock block) {
+        return plugin.setBlock(chunk.getBlock(x & 15, y, z & 15), block);
+    }
+}
@@ -2,12 +2,17 @@ package com.tommytony.war;
 
 import com.tommytony.war.item.WarEntity;
 import com.tommytony.war.item.WarItem;
+import com.tommytony.war.listener.BlockListener;
 import com.tommytony.war.listener.PlayerListener;
 import com.tommytony.war.struct.WarBlock;
 import com.tommytony.war.struct.WarCuboid;
 import com.tommytony.war.struct.WarLocation;
+import com.tommytony.war.zone.GameRegistry;
+import com.tommytony.war.zone.ResetScheduler;
+import com.tommytony.war.zone.SnapshotCache;
 import com.tommytony.war.zone.WarGame;
 import com.tommytony.war.zone.Warzone;
+import com.tommytony.war.zone.ZoneIndex;
 import com.tommytony.war.zone.ZoneValidator;
 import org.apache.commons.lang.StringUtils;
 import org.bukkit.*;
@@ -24,6 +29,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 
@@ -31,6 +37,10 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
     private WarConfig config;
     private ZoneValidator validator;
     private HashMap<String, Warzone> zones;
+    private ZoneIndex zoneIndex;
+    private GameRegistry gameRegistry;
+    private ResetScheduler resetScheduler;
+    private SnapshotCache snapshotCache;
     private HashMap<UUID, BukkitWarPlayer> players;
     private WarListener listener;
     private BukkitCommandManager cmdManager;
@@ -45,6 +55,19 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
                 game.get().forceEndGame();
             }
         }
+        resetScheduler.finishAll(); // the scheduler stops with the plugin
+        for (Warzone zone : zones.values()) {
+            try {
+                zone.close();
+            } catch (Exception e) {
+                this.getLogger().warning("Failed to close zone " + zone.getName() + ": " + e.getMessage());
+            }
+        }
+        try {
+            config.close();
+        } catch (IOException e) {
+            this.getLogger().warning("Failed to close War config: " + e.getMessage());
+        }
     }
 
     @Override
@@ -60,21 +83,28 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
             throw new RuntimeException("Failed to make War data folder at " + this.getDataDir().getPath());
         }
         try {
-            config = new WarConfig(new File(this.getDataDir(), "war.sl3"));
+            config = new WarConfig(new File(this.getDataDir(), "war.sl3"), this::logInfo);
         } catch (FileNotFoundException | SQLException e) {
             this.setEnabled(false);
             throw new RuntimeException(e);
         }
         validator = new ZoneValidator(config);
         zones = new HashMap<>();
+        zoneIndex = new ZoneIndex();
+        gameRegistry = new GameRegistry();
+        resetScheduler = new ResetScheduler(this);
+        resetScheduler.start();
+        snapshotCache = new SnapshotCache(this);
         players = new HashMap<>();
         listener = new WarListener(this);
         this.getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        this.getServer().getPluginManager().registerEvents(new BlockListener(this), this);
         try {
             for (String zoneName : config.getZones()) {
                 this.logInfo("Loading zone " + zoneName + "...");
                 Warzone zone = new Warzone(zoneName, this);
                 zones.put(zoneName, zone);
+                zoneIndex.update(zone);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -88,37 +118,54 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
         if (location == null) {
             return null;
         }
-        Location loc = this.getBukkitLocation(location);
-        Block block = loc.getBlock();
-        BlockState state = block.getState();
+        return this.getBlock(this.getBukkitLocation(location).getBlock().getState(), cheap);
+    }
+
+    @Override
+    public WarBlock getBlock(String world, int x, int y, int z, boolean cheap) {
+        World bukkitWorld = this.getServer().getWorld(world);
+        if (bukkitWorld == null) {
+            throw new IllegalStateException("Can't find world with name " + world);
+        }
+        return this.getBlock(bukkitWorld.getBlockAt(x, y, z).getState(), cheap);
+    }
+
+    /**
+     * Convert a captured block state into a War block.
+     *
+     * @param state block state, such as the state of a block before it was replaced.
+     * @param cheap skip serializing block contents such as sign text and inventories.
+     * @return War block.
+     */
+    public WarBlock getBlock(BlockState state, boolean cheap) {
         String serialized = "";
         if (!cheap) {
             if (state instanceof Sign) {
-                serialized = StringUtils.join(((Sign) block.getState()).getLines(), "\n");
+                serialized = StringUtils.join(((Sign) state).getLines(), "\n");
             } else if (state instanceof InventoryHolder) {
-                List<ItemStack> items = Arrays.asList(((InventoryHolder) block.getState()).getInventory().getContents());
+                List<ItemStack> items = Arrays.asList(((InventoryHolder) state).getInventory().getContents());
                 YamlConfiguration config = new YamlConfiguration();
                 // Serialize to config, then store config in database
                 config.set("items", items);
                 serialized = config.saveToString();
             } else if (state instanceof NoteBlock) {
-                Note note = ((NoteBlock) block.getState()).getNote();
+                Note note = ((NoteBlock) state).getNote();
                 serialized = note.getTone().toString() + '\n' + note.getOctave() + '\n' + note.isSharped();
             } else if (state instanceof Jukebox) {
-                serialized = ((Jukebox) block.getState()).getPlaying().toString();
+                serialized = ((Jukebox) state).getPlaying().toString();
             } else if (state instanceof Skull) {
                 serialized = String.format("%s\n%s\n%s",
-                        ((Skull) block.getState()).hasOwner() ? ((Skull) block.getState()).getOwner() : "",
-                        ((Skull) block.getState()).getSkullType().toString(),
-                        ((Skull) block.getState()).getRotation().toString());
+                        ((Skull) state).hasOwner() ? ((Skull) state).getOwner() : "",
+                        ((Skull) state).getSkullType().toString(),
+                        ((Skull) state).getRotation().toString());
             } else if (state instanceof CommandBlock) {
-                serialized = ((CommandBlock) block.getState()).getName()
-                        + "\n" + ((CommandBlock) block.getState()).getCommand();
+                serialized = ((CommandBlock) state).getName()
+                        + "\n" + ((CommandBlock) state).getCommand();
             } else if (state instanceof CreatureSpawner) {
-                serialized = ((CreatureSpawner) block.getState()).getSpawnedType().toString();
+                serialized = ((CreatureSpawner) state).getSpawnedType().toString();
             }
         }
-        return new WarBlock(block.getType().name(), new HashMap<>(), serialized, state.getData().toItemStack().getDurability());
+        return new WarBlock(state.getType().name(), new HashMap<>(), serialized, state.getData().toItemStack().getDurability());
     }
 
     public Location getBukkitLocation(WarLocation location) {
@@ -128,8 +175,28 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
 
     @Override
     public void setBlock(WarLocation location, WarBlock block) {
-        Location bukkitLoc = this.getBukkitLocation(location);
-        BlockState modify = bukkitLoc.getBlock().getState();
+        this.setBlock(this.getBukkitLocation(location).getBlock(), block);
+    }
+
+    @Override
+    public EditSession openEditSession(String world, boolean recordUndo) {
+        World bukkitWorld = this.getServer().getWorld(world);
+        if (bukkitWorld == null) {
+            throw new IllegalStateException("Can't find world with name " + world);
+        }
+        return new BukkitEditSession(this, bukkitWorld, recordUndo);
+    }
+
+    /**
+     * Place a War block without physics updates.
+     *
+     * @param target block in the world to change.
+     * @param block  block to place.
+     * @return true if the block was changed, false if it already had the same type and no extended data to restore.
+     */
+    public boolean setBlock(Block target, WarBlock block) {
+        BlockState modify = target.getState();
+        boolean changed = false;
         String blockName = block.getBlockName();
         // attempt to get an acceptable name from the JSON variant. used for internal constants.
         if (blockName.startsWith("minecraft:")) {
@@ -143,9 +210,11 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
             modify.setType(data.getType());
             modify.setData(data.getData());
             modify.update(true, false); // No-physics update, preventing the need for deferring blocks
-            modify = bukkitLoc.getBlock().getState(); // Grab a new instance
+            modify = target.getState(); // Grab a new instance
+            changed = true;
         }
         if (!block.getSerialized().isEmpty()) {
+            changed = true;
             if (modify instanceof Sign) {
                 final String[] lines = block.getSerialized().split("\n");
                 for (int i = 0; i < lines.length; i++) {
@@ -204,6 +273,7 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
                 modify.update(true, false);
             }
         }
+        return changed;
     }
 
     @Override
@@ -255,6 +325,26 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
         return zones;
     }
 
+    @Override
+    public ZoneIndex getZoneIndex() {
+        return zoneIndex;
+    }
+
+    @Override
+    public GameRegistry getGameRegistry() {
+        return gameRegistry;
+    }
+
+    @Override
+    public ResetScheduler getResetScheduler() {
+        return resetScheduler;
+    }
+
+    @Override
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
     @Override
     public Warzone getZone(String zoneName) {
         return zones.get(zoneName);
@@ -280,6 +370,7 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
             config.addZone(zoneName);
             Warzone zone = new Warzone(zoneName, this);
             zones.put(zoneName, zone);
+            zoneIndex.update(zone);
             return zone;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -290,7 +381,10 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
     public String deleteZone(String zoneName) {
         try {
             Warzone zone = zones.remove(zoneName);
+            zoneIndex.remove(zone);
             config.deleteZone(zone.getName());
+            zone.getGame().ifPresent(WarGame::forceEndGame); // send players back to the lobby and out of the registry
+            resetScheduler.cancel(zone); // queued work would touch a zone that no longer exists
             zone.close();
             File trashDir = new File(this.getDataDir(), "trash");
             if (!trashDir.exists() && !trashDir.mkdirs()) {
@@ -320,6 +414,7 @@ public final class WarPlugin extends JavaPlugin implements ServerAPI {
         this.getServer().getScheduler().runTaskLater(this, runnable, delayTicks);
     }
 
+    @Override
     public WarListener getListener() {
         return listener;
     }
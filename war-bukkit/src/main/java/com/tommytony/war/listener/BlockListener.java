@@ -0,0 +1,48 @@
+package com.tommytony.war.listener;
+
+import com.tommytony.war.WarPlugin;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+
+public class BlockListener implements Listener {
+
+    private final WarPlugin plugin;
+
+    public BlockListener(WarPlugin warPlugin) {
+        this.plugin = warPlugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        recordChange(event.getBlock().getState());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        recordChange(event.getBlockReplacedState());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        recordChange(event.getBlock().getState());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        for (Block block : event.blockList()) {
+            recordChange(block.getState());
+        }
+    }
+
+    private void recordChange(BlockState original) {
+        plugin.getListener().handleBlockChange(plugin.getWarLocation(original.getLocation()),
+                () -> plugin.getBlock(original, false));
+    }
+}
@@ -4,6 +4,7 @@ import com.tommytony.war.WarPlayer;
 import com.tommytony.war.WarPlugin;
 import com.tommytony.war.struct.WarLocation;
 import com.tommytony.war.zone.WarDamageCause;
+import org.bukkit.Location;
 import org.bukkit.entity.Creature;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.TNTPrimed;
@@ -24,6 +25,11 @@ public class PlayerListener implements Listener {
 
     @EventHandler
     public void onPlayerMove(PlayerMoveEvent event) {
+        Location f = event.getFrom(), t = event.getTo();
+        if (!plugin.getListener().isBlockMovement(f.getWorld().getName(), f.getBlockX(), f.getBlockY(), f.getBlockZ(),
+                t.getWorld().getName(), t.getBlockX(), t.getBlockY(), t.getBlockZ())) {
+            return;
+        }
         WarPlayer player = plugin.getWarPlayer(event.getPlayer());
         WarLocation from = plugin.getWarLocation(event.getFrom());
         WarLocation to = plugin.getWarLocation(event.getTo());
@@ -0,0 +1,202 @@
+package com.tommytony.war;
+
+import com.tommytony.war.struct.WarBlock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch of block changes in one world. Changes are queued, then placed together on commit, a chunk at a time and
+ * without physics updates, so that placing many blocks does not repeat world lookups or trigger updates between
+ * blocks. Implementations are provided by each server, through {@link ServerAPI#openEditSession(String, boolean)}.
+ * <p>
+ * A session may be committed any number of times, and is only used on the server thread.
+ */
+public abstract class EditSession {
+    private final ServerAPI plugin;
+    private final String world;
+    private final List<Change> undo;
+    private final Map<Long, List<Change>> chunks;
+    private int queued;
+
+    /**
+     * Start a session.
+     *
+     * @param plugin     War plugin.
+     * @param world      name of the world to change.
+     * @param recordUndo true to remember the blocks replaced by each change, for {@link #undo()}.
+     */
+    protected EditSession(ServerAPI plugin, String world, boolean recordUndo) {
+        this.plugin = plugin;
+        this.world = world;
+        this.undo = recordUndo ? new ArrayList<>() : null;
+        this.chunks = new LinkedHashMap<>();
+    }
+
+    public String getWorld() {
+        return world;
+    }
+
+    /**
+     * Queue a block change. Nothing in the world changes until {@link #commit()}. Changes to the same block are placed
+     * in the order they were queued.
+     *
+     * @param x     position in X dimension.
+     * @param y     position in Y dimension.
+     * @param z     position in Z dimension.
+     * @param block block to place.
+     */
+    public void setBlock(int x, int y, int z, WarBlock block) {
+        long chunk = ((long) (x >> 4) << 32) | ((z >> 4) & 0xFFFFFFFFL);
+        chunks.computeIfAbsent(chunk, key -> new ArrayList<>()).add(new Change(x, y, z, block));
+        queued++;
+    }
+
+    /**
+     * Get the number of block changes waiting to be committed.
+     *
+     * @return queued change count.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Place all queued changes, grouped by chunk.
+     *
+     * @return counts of blocks changed, and of blocks that were already as requested.
+     */
+    public Result commit() {
+        int changed = 0, unchanged = 0;
+        startCommit();
+        try {
+            for (Map.Entry<Long, List<Change>> chunk : chunks.entrySet()) {
+                long key = chunk.getKey();
+                startChunk((int) (key >> 32), (int) key);
+                for (Change change : chunk.getValue()) {
+                    WarBlock previous = undo != null ? getBlock(change.x, change.y, change.z) : null;
+                    if (placeBlock(change.x, change.y, change.z, change.block)) {
+                        changed++;
+                        if (undo != null) {
+                            undo.add(new Change(change.x, change.y, change.z, previous));
+                        }
+                    } else {
+                        unchanged++;
+                    }
+                }
+            }
+        } finally {
+            chunks.clear();
+            queued = 0;
+            finishCommit();
+        }
+        return new Result(changed, unchanged);
+    }
+
+    /**
+     * Create a session that puts back every block changed by this session so far. Requires the undo buffer.
+     *
+     * @return uncommitted session restoring the replaced blocks.
+     * @throws IllegalStateException if this session does not record an undo buffer.
+     */
+    public EditSession undo() {
+        if (undo == null) {
+            throw new IllegalStateException("Edit session does not record changes to undo.");
+        }
+        EditSession session = plugin.openEditSession(world, false);
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            Change change = undo.get(i);
+            session.setBlock(change.x, change.y, change.z, change.block);
+        }
+        return session;
+    }
+
+    /**
+     * Called before the first change of a commit is placed.
+     */
+    protected void startCommit() {
+    }
+
+    /**
+     * Called before the changes in a chunk are placed. Changes in the same chunk are placed together.
+     *
+     * @param chunkX chunk position in X dimension.
+     * @param chunkZ chunk position in Z dimension.
+     */
+    protected void startChunk(int chunkX, int chunkZ) {
+    }
+
+    /**
+     * Called after the last change of a commit is placed, even if placing failed.
+     */
+    protected void finishCommit() {
+    }
+
+    /**
+     * Read a block in the world of the session, including its extended data, for the undo buffer.
+     *
+     * @param x position in X dimension.
+     * @param y position in Y dimension.
+     * @param z position in Z dimension.
+     * @return current block.
+     */
+    protected WarBlock getBlock(int x, int y, int z) {
+        return plugin.getBlock(world, x, y, z, false);
+    }
+
+    /**
+     * Place a block in the world of the session without physics updates, if it differs from the current block.
+     *
+     * @param x     position in X dimension.
+     * @param y     position in Y dimension.
+     * @param z     position in Z dimension.
+     * @param block block to place.
+     * @return true if the world was changed.
+     */
+    protected abstract boolean placeBlock(int x, int y, int z, WarBlock block);
+
+    /**
+     * Counts of blocks placed by a commit.
+     */
+    public static final class Result {
+        private final int changed;
+        private final int unchanged;
+
+        Result(int changed, int unchanged) {
+            this.changed = changed;
+            this.unchanged = unchanged;
+        }
+
+        /**
+         * Get the number of blocks that were changed.
+         *
+         * @return changed block count.
+         */
+        public int getChanged() {
+            return changed;
+        }
+
+        /**
+         * Get the number of blocks that were already as requested and left alone.
+         *
+         * @return unchanged block count.
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+    }
+
+    private static final class Change {
+        private final int x, y, z;
+        private final WarBlock block;
+
+        private Change(int x, int y, int z, WarBlock block) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.block = block;
+        }
+    }
+}
@@ -4,7 +4,11 @@ import com.tommytony.war.item.WarEntity;
 import com.tommytony.war.struct.WarBlock;
 import com.tommytony.war.struct.WarCuboid;
 import com.tommytony.war.struct.WarLocation;
+import com.tommytony.war.zone.GameRegistry;
+import com.tommytony.war.zone.ResetScheduler;
+import com.tommytony.war.zone.SnapshotCache;
 import com.tommytony.war.zone.Warzone;
+import com.tommytony.war.zone.ZoneIndex;
 import com.tommytony.war.zone.ZoneValidator;
 
 import java.io.File;
@@ -22,6 +26,21 @@ public interface ServerAPI {
      */
     WarBlock getBlock(WarLocation location, boolean cheap);
 
+    /**
+     * Get information from the server about the block at a specific position. Used when walking entire zones, where
+     * allocating a location for each block is wasteful. Implementations should override this to look up the block
+     * directly.
+     * @param world Name of the world containing the block.
+     * @param x Position in X dimension.
+     * @param y Position in Y dimension.
+     * @param z Position in Z dimension.
+     * @param cheap true to skip loading extended data (chests, tile ent).
+     * @return block suitable for use by war-core.
+     */
+    default WarBlock getBlock(String world, int x, int y, int z, boolean cheap) {
+        return getBlock(new WarLocation(x, y, z, world), cheap);
+    }
+
     /**
      * Set a location in the world to a specific block. Does not update physics.
      * @param location Future location of block.
@@ -29,6 +48,14 @@ public interface ServerAPI {
      */
     void setBlock(WarLocation location, WarBlock block);
 
+    /**
+     * Start a batch of block changes in a world, for placing many blocks at once.
+     * @param world Name of the world to change.
+     * @param recordUndo true to remember replaced blocks, so the changes can be undone.
+     * @return empty edit session.
+     */
+    EditSession openEditSession(String world, boolean recordUndo);
+
     /**
      * Remove entities from the world in a specific area.
      * @param cuboid Region to affect.
@@ -60,6 +87,34 @@ public interface ServerAPI {
 
     Map<String, Warzone> getZones();
 
+    /**
+     * Get the spatial index of loaded warzones, for looking up the zone at a location.
+     *
+     * @return zone index.
+     */
+    ZoneIndex getZoneIndex();
+
+    /**
+     * Get the registry of players in active games, for looking up the game a player is in.
+     *
+     * @return game registry.
+     */
+    GameRegistry getGameRegistry();
+
+    /**
+     * Get the scheduler that spreads warzone resets over several ticks.
+     *
+     * @return reset scheduler.
+     */
+    ResetScheduler getResetScheduler();
+
+    /**
+     * Get the cache of saved warzone blocks shared by all zones.
+     *
+     * @return snapshot cache.
+     */
+    SnapshotCache getSnapshotCache();
+
     /**
      * Get infomation about a loaded warzone.
      *
@@ -69,7 +124,7 @@ public interface ServerAPI {
     Warzone getZone(String zoneName);
 
     /**
-     * Create a warzone.
+     * Create a warzone. The zone is added to the zone index once its area is set.
      *
      * @param zoneName Name of the warzone to create.
      * @return Created warzone object.
@@ -77,7 +132,7 @@ public interface ServerAPI {
     Warzone createZone(String zoneName);
 
     /**
-     * Delete a warzone.
+     * Delete a warzone, removing it from the zone index.
      *
      * @param zoneName Name of the warzone to delete.
      * @return Path to deleted zone database on filesystem.
@@ -101,6 +156,13 @@ public interface ServerAPI {
      */
     void delayTask(double delay, Runnable runnable);
 
+    /**
+     * Get the handler of all events received by War.
+     *
+     * @return event handler.
+     */
+    WarListener getListener();
+
     /**
      * Get an instance of the zone security validator.
      *
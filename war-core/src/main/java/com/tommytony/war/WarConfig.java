@@ -1,6 +1,8 @@
 package com.tommytony.war;
 
 import com.google.common.collect.ImmutableList;
+import com.tommytony.war.zone.StatementCache;
+import com.tommytony.war.zone.StorageWriter;
 import com.tommytony.war.zone.ZoneConfig;
 
 import java.io.Closeable;
@@ -11,6 +13,7 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * The main war configuration database.
@@ -19,26 +22,43 @@ public class WarConfig implements Closeable {
     public static final String DEFAULT_FORMAT = "{0} <{1}> ({2})";
     public static final String MODIFIED_FORMAT = "{0} <{1}> = {2}";
     private final ZoneConfig zoneDefaults;
+    /**
+     * Values of all war settings indexed by ordinal, read once when the config is loaded. Not modified once published.
+     */
+    private volatile int[] settings;
     /**
      * Database configuration descriptor.
      */
     private Connection conn;
+    /**
+     * Compiled statements for the database connection.
+     */
+    private StatementCache statements;
+    /**
+     * Writer for the database, with its own connection.
+     */
+    private StorageWriter writer;
 
     /**
      * Load the war config database for future use.
      *
      * @param file War configuration database location.
+     * @param log  receives storage progress and error messages.
      * @throws FileNotFoundException if folder for database does not exist.
      * @throws SQLException if there is an error creating or updating tables.
      */
-    WarConfig(File file) throws FileNotFoundException, SQLException {
+    WarConfig(File file, Consumer<String> log) throws FileNotFoundException, SQLException {
         conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
         try (Statement stmt = conn.createStatement()) {
             stmt.executeUpdate("CREATE TABLE IF NOT EXISTS settings (option TEXT, value BLOB)");
             stmt.executeUpdate("CREATE TABLE IF NOT EXISTS zones (name TEXT)");
             stmt.executeUpdate("CREATE TABLE IF NOT EXISTS zonemakers (uuid TEXT)");
         }
-        zoneDefaults = new ZoneConfig(conn, "zone_settings");
+        statements = new StatementCache(conn);
+        writer = new StorageWriter(file.getName(),
+                new StatementCache(DriverManager.getConnection("jdbc:sqlite:" + file.getPath())), log);
+        zoneDefaults = new ZoneConfig(statements, writer, "zone_settings");
+        settings = loadSettings();
     }
 
     /**
@@ -46,21 +66,39 @@ public class WarConfig implements Closeable {
      *
      * @param setting The type of setting to look up.
      * @return the value of the setting or the default if not found.
-     * @throws RuntimeException wrapping SQLException
      */
     public int getInt(WarSetting setting) {
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT value FROM settings WHERE option = ?")) {
-            stmt.setString(1, setting.name());
-            try (ResultSet result = stmt.executeQuery()) {
-                if (result.next()) {
-                    return result.getInt(1);
-                } else {
-                    return (Integer) setting.defaultValue;
+        return settings[setting.ordinal()];
+    }
+
+    /**
+     * Read all war settings. Only called while the config is loaded, before any writes are queued, so the database is
+     * read without waiting for the writer.
+     *
+     * @return values of all settings indexed by ordinal.
+     * @throws SQLException error executing query.
+     */
+    private int[] loadSettings() throws SQLException {
+        WarSetting[] values = WarSetting.values();
+        int[] loaded = new int[values.length];
+        for (WarSetting setting : values) {
+            if (setting.getDataType() == Integer.class) {
+                loaded[setting.ordinal()] = (Integer) setting.defaultValue;
+            }
+        }
+        try (ResultSet result = statements.prepare("SELECT option, value FROM settings").executeQuery()) {
+            while (result.next()) {
+                try {
+                    WarSetting setting = WarSetting.valueOf(result.getString(1));
+                    if (setting.getDataType() == Integer.class) {
+                        loaded[setting.ordinal()] = result.getInt(2);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // setting from another version of War
                 }
             }
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
         }
+        return loaded;
     }
 
     /**
@@ -80,8 +118,8 @@ public class WarConfig implements Closeable {
      */
     public Collection<String> getZones() throws SQLException {
         ArrayList<String> zones = new ArrayList<>();
-        try (Statement stmt = conn.createStatement();
-             ResultSet result = stmt.executeQuery("SELECT name FROM zones")) {
+        writer.flush();
+        try (ResultSet result = statements.prepare("SELECT name FROM zones").executeQuery()) {
             while (result.next()) {
                 zones.add(result.getString(1));
             }
@@ -96,10 +134,11 @@ public class WarConfig implements Closeable {
      * @throws SQLException error executing update.
      */
     public void addZone(String zoneName) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO zones (name) VALUES (?)")) {
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare("INSERT INTO zones (name) VALUES (?)");
             stmt.setString(1, zoneName);
             stmt.executeUpdate();
-        }
+        });
     }
 
     /**
@@ -109,10 +148,11 @@ public class WarConfig implements Closeable {
      * @throws SQLException error executing update.
      */
     public void deleteZone(String zoneName) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM zones WHERE name = ?")) {
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare("DELETE FROM zones WHERE name = ?");
             stmt.setString(1, zoneName);
             stmt.executeUpdate();
-        }
+        });
     }
 
     /**
@@ -123,8 +163,8 @@ public class WarConfig implements Closeable {
      */
     public Collection<UUID> getZoneMakers() throws SQLException {
         ArrayList<UUID> makers = new ArrayList<>();
-        try (Statement stmt = conn.createStatement();
-             ResultSet result = stmt.executeQuery("SELECT uuid FROM zonemakers")) {
+        writer.flush();
+        try (ResultSet result = statements.prepare("SELECT uuid FROM zonemakers").executeQuery()) {
             while (result.next()) {
                 UUID playerId = UUID.fromString(result.getString(1));
                 makers.add(playerId);
@@ -143,6 +183,8 @@ public class WarConfig implements Closeable {
     @Override
     public void close() throws IOException {
         try {
+            writer.close();
+            statements.close();
             conn.close();
         } catch (SQLException e) {
             throw new IOException(e);
@@ -181,26 +223,22 @@ public class WarConfig implements Closeable {
      * @param value New value to add or replace.
      */
     public void setInt(WarSetting setting, int value) {
-        boolean exists;
-        String sql = "INSERT INTO settings (value, option) VALUES (?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT value FROM settings WHERE option = ?")) {
+        writer.submit(database -> {
+            boolean exists;
+            PreparedStatement stmt = database.prepare("SELECT value FROM settings WHERE option = ?");
             stmt.setString(1, setting.name());
             try (ResultSet result = stmt.executeQuery()) {
                 exists = result.next();
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (exists) {
-            sql = "UPDATE settings SET value = ? WHERE option = ?";
-        }
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt = database.prepare(exists ? "UPDATE settings SET value = ? WHERE option = ?"
+                    : "INSERT INTO settings (value, option) VALUES (?, ?)");
             stmt.setInt(1, value);
             stmt.setString(2, setting.name());
             stmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        });
+        int[] changed = settings.clone();
+        changed[setting.ordinal()] = value;
+        settings = changed;
     }
 
     /**
@@ -208,7 +246,10 @@ public class WarConfig implements Closeable {
      */
     public enum WarSetting {
         MAXZONES(Integer.class, 20),
-        MAXZONESIZE(Integer.class, 1_000_000);
+        MAXZONESIZE(Integer.class, 1_000_000),
+        RESETBUDGET(Integer.class, 10),
+        SNAPSHOTCACHE(Integer.class, 64),
+        SNAPSHOTOFFHEAP(Integer.class, 0);
         private final Class<?> dataType;
         private final Object defaultValue;
 
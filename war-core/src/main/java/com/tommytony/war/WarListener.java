@@ -1,76 +1,106 @@
 package com.tommytony.war;
 
+import com.tommytony.war.struct.WarBlock;
 import com.tommytony.war.struct.WarLocation;
 import com.tommytony.war.zone.WarDamageCause;
 import com.tommytony.war.zone.WarGame;
 import com.tommytony.war.zone.Warzone;
+import com.tommytony.war.zone.ZoneIndex;
 import com.tommytony.war.zone.ZoneSetting;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Handles all events received by War.
  */
 public class WarListener {
     private final ServerAPI plugin;
+    private long filteredMovements;
+    private long handledMovements;
 
     WarListener(ServerAPI warPlugin) {
         plugin = warPlugin;
     }
 
+    /**
+     * Check if a movement event changed the block or world the player is in. Server implementations call this before
+     * converting the event, and skip {@link #handlePlayerMovement(WarPlayer, WarLocation, WarLocation)} entirely if the
+     * player only turned their head or moved within the same block, which is most movement events.
+     *
+     * @param fromWorld world the player moved from.
+     * @param fromX     block position the player moved from in X dimension.
+     * @param fromY     block position the player moved from in Y dimension.
+     * @param fromZ     block position the player moved from in Z dimension.
+     * @param toWorld   world the player moved to.
+     * @param toX       block position the player moved to in X dimension.
+     * @param toY       block position the player moved to in Y dimension.
+     * @param toZ       block position the player moved to in Z dimension.
+     * @return true if the movement needs to be handled.
+     */
+    public boolean isBlockMovement(String fromWorld, int fromX, int fromY, int fromZ,
+                                   String toWorld, int toX, int toY, int toZ) {
+        if (fromX == toX && fromY == toY && fromZ == toZ && fromWorld.equals(toWorld)) {
+            filteredMovements++;
+            return false;
+        }
+        handledMovements++;
+        return true;
+    }
+
+    /**
+     * Get the number of movement events skipped because the player stayed in the same block.
+     *
+     * @return filtered event count.
+     */
+    public long getFilteredMovements() {
+        return filteredMovements;
+    }
+
+    /**
+     * Get the number of movement events passed on for zone, gate, and game handling.
+     *
+     * @return handled event count.
+     */
+    public long getHandledMovements() {
+        return handledMovements;
+    }
+
     public boolean handlePlayerMovement(WarPlayer player, WarLocation from, WarLocation to) {
-        boolean fromInZone = plugin.getZones().values().stream().anyMatch(warzone -> warzone.getCuboid().contains(from));
-        boolean toInZone = plugin.getZones().values().stream().anyMatch(warzone -> warzone.getCuboid().contains(to));
-        if (fromInZone && !toInZone) { // leaving a zone
-            return plugin.getZones().values().stream()
-                    .filter(warzone -> warzone.getCuboid().contains(from)).findFirst().orElse(null)
-                    .getListener().handlePlayerLeaveZone(player, from, to);
-        } else if (!fromInZone && toInZone) { // entering a zone
-            return plugin.getZones().values().stream()
-                    .filter(warzone -> warzone.getCuboid().contains(to)).findFirst().orElse(null)
-                    .getListener().handlePlayerEnterZone(player, from, to);
-        } else if (fromInZone) { // interaction inside of a zone
-            return plugin.getZones().values().stream()
-                    .filter(warzone -> warzone.getCuboid().contains(from)).findFirst().orElse(null)
-                    .getListener().handlePlayerMovementInWarzone(player, from, to);
+        Warzone fromZone = plugin.getZoneIndex().getZone(from);
+        Warzone toZone = plugin.getZoneIndex().getZone(to);
+        if (fromZone != null && toZone == null) { // leaving a zone
+            return fromZone.getListener().handlePlayerLeaveZone(player, from, to);
+        } else if (fromZone == null && toZone != null) { // entering a zone
+            return toZone.getListener().handlePlayerEnterZone(player, from, to);
+        } else if (fromZone != null) { // interaction inside of a zone
+            return fromZone.getListener().handlePlayerMovementInWarzone(player, from, to);
         } else { // interaction outside of a zone
             if (player.isPlayingWar()) { // teleport player back into warzone
                 WarGame.Team playerTeam = player.getWarzone().getGame().orElseThrow(IllegalStateException::new).getPlayerTeam(player);
                 player.setLocation(player.getWarzone().getTeamSpawn(playerTeam.getName()));
             }
-            for (Warzone zone : plugin.getZones().values()) {
-                // check all gates in each war zone
-                zone.getGates().keySet().stream().filter(loc -> to.getBlockLoc().equals(loc.getBlockLoc())).forEach(loc -> {
-                    String gateName = zone.getGates().get(loc);
+            ZoneIndex.Gate gate = plugin.getZoneIndex().getGate(to);
+            if (gate != null) {
+                Warzone zone = gate.getZone();
+                String gateName = gate.getName();
+                if (!zone.getGame().isPresent()) {
+                    if (zone.getConfig().getBoolean(ZoneSetting.EDITING)) {
+                        player.sendMessage("This zone is disabled for editing.");
+                        player.setLocation(zone.getTeleport());
+                        return false;
+                    }
+                    zone.newGame();
+                }
+                Optional<WarGame> game = zone.getGame();
+                if (game.isPresent()) {
                     if (gateName.equals("autoassign")) {
-                        if (!zone.getGame().isPresent()) {
-                            if (zone.getConfig().getBoolean(ZoneSetting.EDITING)) {
-                                player.sendMessage("This zone is disabled for editing.");
-                                player.setLocation(zone.getTeleport());
-                                return;
-                            }
-                            zone.newGame();
-                        }
-                        Optional<WarGame> game = zone.getGame();
-                        if (game.isPresent()) {
-                            game.get().autoAssign(player);
-                        }
+                        game.get().autoAssign(player);
                     } else {
-                        if (!zone.getGame().isPresent()) {
-                            if (zone.getConfig().getBoolean(ZoneSetting.EDITING)) {
-                                player.sendMessage("This zone is disabled for editing.");
-                                player.setLocation(zone.getTeleport());
-                                return;
-                            }
-                            zone.newGame();
-                        }
-                        Optional<WarGame> game = zone.getGame();
-                        if (game.isPresent()) {
-                            WarGame.Team team = game.get().getTeam(gateName);
-                            game.get().assign(player, team);
-                        }
+                        WarGame.Team team = game.get().getTeam(gateName);
+                        game.get().assign(player, team);
                     }
-                });
+                }
             }
         }
         return false;
@@ -110,4 +140,20 @@ public class WarListener {
         Warzone zone = defender.getWarzone();
         return zone.getListener().handleDamage(defender, damage, cause);
     }
+
+    /**
+     * Notify War that a block is about to change or has changed, so that it can be restored at the end of the round.
+     *
+     * @param location location of the block.
+     * @param original supplier of the block state before the change. Only called if the block is inside a warzone with
+     *                 an active game or a save in progress, and has not already changed since.
+     * @return false, block changes are never cancelled.
+     */
+    public boolean handleBlockChange(WarLocation location, Supplier<WarBlock> original) {
+        Warzone zone = plugin.getZoneIndex().getZone(location);
+        if (zone == null) {
+            return false;
+        }
+        return zone.getListener().handleBlockChange(location, original);
+    }
 }
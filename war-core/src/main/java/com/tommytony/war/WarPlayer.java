@@ -8,7 +8,6 @@ import com.tommytony.war.struct.WarLocation;
 import com.tommytony.war.zone.WarGame;
 import com.tommytony.war.zone.Warzone;
 
-import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -58,7 +57,7 @@ public abstract class WarPlayer extends WarConsole {
         this.zoneCreationState = zoneCreationState;
     }
 
-    UUID getPlayerId() {
+    public UUID getPlayerId() {
         return playerId;
     }
 
@@ -68,11 +67,7 @@ public abstract class WarPlayer extends WarConsole {
      * @return true if the player is playing War
      */
     public boolean isPlayingWar() {
-        return plugin.getZones().values().stream()
-                .filter(z -> {
-                    Optional<WarGame> game = z.getGame();
-                    return game.isPresent() && game.get().isPlaying(this);
-                }).count() > 0;
+        return plugin.getGameRegistry().getTeam(this) != null;
     }
 
     /**
@@ -145,11 +140,7 @@ public abstract class WarPlayer extends WarConsole {
      * @return warzone with active game
      */
     public Warzone getWarzone() {
-        return plugin.getZones().values().stream()
-                .filter(z -> {
-                    Optional<WarGame> game = z.getGame();
-                    return game.isPresent() && game.get().isPlaying(this);
-                }).findAny().orElse(null);
+        return plugin.getGameRegistry().getWarzone(this);
     }
 
     /**
@@ -168,8 +159,9 @@ public abstract class WarPlayer extends WarConsole {
      * @return formatted name
      */
     public String getDisplayName() {
-        if (isPlayingWar()) {
-            return getWarzone().getGame().orElseThrow(IllegalStateException::new).getPlayerTeam(this).getColor() + getName() + WarColor.WHITE;
+        WarGame.Team team = plugin.getGameRegistry().getTeam(this);
+        if (team != null) {
+            return team.getColor() + getName() + WarColor.WHITE;
         }
         return getName();
     }
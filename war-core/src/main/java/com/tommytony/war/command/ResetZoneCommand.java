@@ -9,6 +9,7 @@ import com.tommytony.war.zone.Warzone;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class ResetZoneCommand extends WarCommand {
     public ResetZoneCommand(ServerAPI plugin) {
@@ -27,14 +28,16 @@ public class ResetZoneCommand extends WarCommand {
         }
         sender.sendMessage(MessageFormat.format("Reloading zone {0}...", zoneName));
         Optional<WarGame> game = zone.getGame();
-        if (game.isPresent()) {
-            game.get().endRound();
-        } else {
-            zone.reset();
-        }
+        // ending the round with a full reset still respawns the players once the zone is reloaded
+        CompletableFuture<Void> reset = game.isPresent() ? game.get().endRound(true) : zone.scheduleReset();
         int affected = (int) Math.floor(zone.getCuboid().getSize());
-        sender.sendMessage(MessageFormat.format("Reloaded {0} blocks in zone {1}.", affected, zoneName));
-
+        reset.whenComplete((result, error) -> {
+            if (error != null) {
+                sender.sendMessage(MessageFormat.format("Failed to reload zone {0}: {1}", zoneName, error.getMessage()));
+            } else {
+                sender.sendMessage(MessageFormat.format("Reloaded {0} blocks in zone {1}.", affected, zoneName));
+            }
+        });
     }
 
     @Override
@@ -68,7 +71,7 @@ public class ResetZoneCommand extends WarCommand {
 
     @Override
     public String getDescription() {
-        return "This command will either reset the zone blocks if empty, or end the current round if a game is active (which will reset the blocks).";
+        return "This command resets all the zone blocks, ending the current round first if a game is active.";
     }
 
     @Override
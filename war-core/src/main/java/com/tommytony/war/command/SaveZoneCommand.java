@@ -24,10 +24,15 @@ public class SaveZoneCommand extends WarCommand {
             throw new CommandUserError(MessageFormat.format("Warzone {0} not found.", zoneName));
         }
         sender.sendMessage(MessageFormat.format("Saving zone {0}...", zoneName));
-        zone.save();
         int affected = (int) Math.floor(zone.getCuboid().getSize());
-        sender.sendMessage(MessageFormat.format("Saved {0} blocks in zone {1}.", affected, zoneName));
-
+        // completed on the storage thread, so report back on the server thread
+        zone.scheduleSave().whenComplete((result, error) -> getPlugin().delayTask(0, () -> {
+            if (error != null) {
+                sender.sendMessage(MessageFormat.format("Failed to save zone {0}: {1}", zoneName, error.getMessage()));
+            } else {
+                sender.sendMessage(MessageFormat.format("Saved {0} blocks in zone {1}.", affected, zoneName));
+            }
+        }));
     }
 
     @Override
@@ -62,7 +67,7 @@ public class SaveZoneCommand extends WarCommand {
     @Override
     public String getDescription() {
         return "This command only adds the current state of the zone to the storage file. All other configuration changes are saved automatically.\n" +
-                "Warning: this command will function during a game; make sure this is the intended behavior.\n" +
+                "Saving during a game is safe: the zone is saved as it was when the command was run.\n" +
                 "Currently, the plugin does not store previous versions of zones: this command will overwrite the existing save.";
     }
 
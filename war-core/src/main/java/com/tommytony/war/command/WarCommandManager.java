@@ -29,5 +29,6 @@ public abstract class WarCommandManager {
         registerCommand(new DeleteZoneCommand(plugin));
         registerCommand(new SetZoneCommand(plugin));
         registerCommand(new WarConfigCommand(plugin));
+        registerCommand(new WarStatsCommand(plugin));
     }
 }
@@ -0,0 +1,67 @@
+package com.tommytony.war.command;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarConsole;
+import com.tommytony.war.zone.ResetScheduler;
+import com.tommytony.war.zone.SnapshotCache;
+
+import java.text.MessageFormat;
+import java.util.List;
+
+public class WarStatsCommand extends WarCommand {
+    public WarStatsCommand(ServerAPI plugin) {
+        super(plugin);
+    }
+
+    @Override
+    void handleCommand(WarConsole sender, String[] args) {
+        long filtered = getPlugin().getListener().getFilteredMovements();
+        long handled = getPlugin().getListener().getHandledMovements();
+        long total = filtered + handled;
+        sender.sendMessage(MessageFormat.format("Movement events: {0} handled, {1} skipped within the same block ({2}%).",
+                handled, filtered, total == 0 ? 0 : filtered * 100 / total));
+        ResetScheduler resets = getPlugin().getResetScheduler();
+        sender.sendMessage(MessageFormat.format("Zone resets: {0} in progress, {1} steps run.",
+                resets.getPendingResets(), resets.getCompletedSteps()));
+        SnapshotCache snapshots = getPlugin().getSnapshotCache();
+        sender.sendMessage(MessageFormat.format("Zone snapshot cache: {0} zones in {1} of {2} KB, {3} hits, {4} misses, {5} evicted.",
+                snapshots.getCachedZones(), snapshots.getSize() / 1024, snapshots.getBudget() / 1024,
+                snapshots.getHits(), snapshots.getMisses(), snapshots.getEvictions()));
+    }
+
+    @Override
+    List<String> handleTab(WarConsole sender, String[] args) {
+        return ImmutableList.of();
+    }
+
+    @Override
+    public String getName() {
+        return "warstats";
+    }
+
+    @Override
+    public List<String> getAliases() {
+        return ImmutableList.of();
+    }
+
+    @Override
+    public String getTagline() {
+        return "View War performance counters.";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Displays counters collected since the server started, for diagnosing the cost of War on the server.";
+    }
+
+    @Override
+    public String getUsage() {
+        return "";
+    }
+
+    @Override
+    public String getPermission() {
+        return "war.config";
+    }
+}
@@ -0,0 +1,16 @@
+package com.tommytony.war.struct;
+
+/**
+ * Operation accepting the integer coordinates of a block.
+ */
+@FunctionalInterface
+public interface IntTriConsumer {
+    /**
+     * Perform the operation on a block position.
+     *
+     * @param x position in X dimension.
+     * @param y position in Y dimension.
+     * @param z position in Z dimension.
+     */
+    void accept(int x, int y, int z);
+}
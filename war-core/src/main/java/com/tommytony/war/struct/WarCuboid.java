@@ -1,14 +1,16 @@
 package com.tommytony.war.struct;
 
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * Region of space containing locations.
+ * Region of space containing locations. The bounds are normalized to block coordinates when the cuboid is created, so
+ * checking if a location is contained is cheap enough to run on every player movement.
  */
 public class WarCuboid implements Iterable<WarLocation> {
     private final WarLocation corner1, corner2;
-    private List<WarLocation> blocks;
+    private final String world;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
 
     /**
      * Create a new cuboid from two locations. The locations do not have to be maximums or minimums; they may be any two
@@ -20,6 +22,13 @@ public class WarCuboid implements Iterable<WarLocation> {
     public WarCuboid(WarLocation corner1, WarLocation corner2) {
         this.corner1 = corner1;
         this.corner2 = corner2;
+        this.world = corner1.getWorld();
+        this.minX = Math.min(corner1.getBlockX(), corner2.getBlockX());
+        this.minY = Math.min(corner1.getBlockY(), corner2.getBlockY());
+        this.minZ = Math.min(corner1.getBlockZ(), corner2.getBlockZ());
+        this.maxX = Math.max(corner1.getBlockX(), corner2.getBlockX());
+        this.maxY = Math.max(corner1.getBlockY(), corner2.getBlockY());
+        this.maxZ = Math.max(corner1.getBlockZ(), corner2.getBlockZ());
     }
 
     /**
@@ -40,15 +49,17 @@ public class WarCuboid implements Iterable<WarLocation> {
         return corner2;
     }
 
+    public String getWorld() {
+        return world;
+    }
+
     /**
      * Get the corner of the region which has the smallest value in the x, y, and z dimensions.
      *
      * @return location.
      */
     public WarLocation getMinBlock() {
-        return new WarLocation(corner1.getX() < corner2.getX() ? corner1.getX() : corner2.getX(),
-                corner1.getY() < corner2.getY() ? corner1.getY() : corner2.getY(),
-                corner1.getZ() < corner2.getZ() ? corner1.getZ() : corner2.getZ(), corner1.getWorld());
+        return new WarLocation(minX, minY, minZ, world);
     }
 
     /**
@@ -57,9 +68,31 @@ public class WarCuboid implements Iterable<WarLocation> {
      * @return location.
      */
     public WarLocation getMaxBlock() {
-        return new WarLocation(corner1.getX() > corner2.getX() ? corner1.getX() : corner2.getX(),
-                corner1.getY() > corner2.getY() ? corner1.getY() : corner2.getY(),
-                corner1.getZ() > corner2.getZ() ? corner1.getZ() : corner2.getZ(), corner1.getWorld());
+        return new WarLocation(maxX, maxY, maxZ, world);
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
     }
 
     /**
@@ -68,7 +101,7 @@ public class WarCuboid implements Iterable<WarLocation> {
      * @return length.
      */
     public double getSizeX() {
-        return getMaxBlock().getX() - getMinBlock().getX() + 1;
+        return maxX - minX + 1;
     }
 
     /**
@@ -77,7 +110,7 @@ public class WarCuboid implements Iterable<WarLocation> {
      * @return length.
      */
     public double getSizeY() {
-        return getMaxBlock().getY() - getMinBlock().getY() + 1;
+        return maxY - minY + 1;
     }
 
     /**
@@ -86,7 +119,7 @@ public class WarCuboid implements Iterable<WarLocation> {
      * @return length.
      */
     public double getSizeZ() {
-        return getMaxBlock().getZ() - getMinBlock().getZ() + 1;
+        return maxZ - minZ + 1;
     }
 
     /**
@@ -99,20 +132,32 @@ public class WarCuboid implements Iterable<WarLocation> {
     }
 
     /**
-     * Check if this cuboid contains a particular location.
+     * Check if this cuboid contains a particular location. The location must be in the same world as the cuboid, and
+     * inside one of the blocks of the cuboid.
      *
      * @param location location to check
      * @return true if location is contained within this cuboid.
      */
     public boolean contains(WarLocation location) {
-        return location.getX() >= getMinBlock().getX() && location.getX() <= getMaxBlock().getX()
-                && location.getY() >= getMinBlock().getY() && location.getY() <= getMaxBlock().getY()
-                && location.getZ() >= getMinBlock().getZ() && location.getZ() <= getMaxBlock().getZ();
+        return contains(location.getBlockX(), location.getBlockY(), location.getBlockZ())
+                && (world == null ? location.getWorld() == null : world.equals(location.getWorld()));
+    }
+
+    /**
+     * Check if this cuboid contains a particular block. The world is not checked.
+     *
+     * @param x block position in X dimension.
+     * @param y block position in Y dimension.
+     * @param z block position in Z dimension.
+     * @return true if the block is contained within this cuboid.
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
     }
 
     @Override
     public String toString() {
-        return String.format("%dx%dx%d", (int) Math.floor(getSizeX()), (int) Math.floor(getSizeY()), (int) Math.floor(getSizeZ()));
+        return (maxX - minX + 1) + "x" + (maxY - minY + 1) + "x" + (maxZ - minZ + 1);
     }
 
     /**
@@ -121,49 +166,112 @@ public class WarCuboid implements Iterable<WarLocation> {
      * @return block iterator.
      */
     @Override
-
     public Iterator<WarLocation> iterator() {
-        return new WarCuboidIterator(this);
+        return new WarCuboidIterator(this, false);
     }
 
-    private class WarCuboidIterator implements Iterator<WarLocation> {
-        private final WarCuboid cuboid;
-        private int i;
+    /**
+     * Iterate across the block locations on the six faces of this cuboid. Each block on the boundary is returned once,
+     * and blocks inside the cuboid are skipped entirely.
+     *
+     * @return boundary block iterator.
+     */
+    public Iterator<WarLocation> shellIterator() {
+        return new WarCuboidIterator(this, true);
+    }
 
-        WarCuboidIterator(WarCuboid cuboid) {
-            this.cuboid = cuboid;
-            i = 0;
+    /**
+     * Visit the integer coordinates of every block in this cuboid without allocating locations.
+     * <p>
+     * Blocks are visited in chunk-major order: each 16x16 chunk column is finished, bottom to top, before the next
+     * column is started. Server implementations can then load and modify each chunk once instead of moving between
+     * chunks on every row.
+     *
+     * @param visitor operation to perform on each block.
+     */
+    public void forEachBlock(IntTriConsumer visitor) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            int startX = Math.max(minX, chunkX << 4), endX = Math.min(maxX, (chunkX << 4) + 15);
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                int startZ = Math.max(minZ, chunkZ << 4), endZ = Math.min(maxZ, (chunkZ << 4) + 15);
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = startZ; z <= endZ; z++) {
+                        for (int x = startX; x <= endX; x++) {
+                            visitor.accept(x, y, z);
+                        }
+                    }
+                }
+            }
         }
+    }
 
-        @Override
-        public boolean hasNext() {
-            int li = 0;
-            for (int x = cuboid.getMinBlock().getBlockX(); x <= cuboid.getMaxBlock().getBlockX(); x++) {
-                for (int y = cuboid.getMinBlock().getBlockY(); y <= cuboid.getMaxBlock().getBlockY(); y++) {
-                    for (int z = cuboid.getMinBlock().getBlockZ(); z <= cuboid.getMaxBlock().getBlockZ(); z++) {
-                        if (li++ == i) {
-                            return true;
-                        }
+    /**
+     * Visit the integer coordinates of every block on the six faces of this cuboid. Each block on the boundary is
+     * visited once, so the cost grows with the surface area of the cuboid instead of its volume.
+     *
+     * @param visitor operation to perform on each boundary block.
+     */
+    public void forEachShellBlock(IntTriConsumer visitor) {
+        for (int x = minX; x <= maxX; x++) {
+            boolean xFace = x == minX || x == maxX;
+            for (int y = minY; y <= maxY; y++) {
+                if (xFace || y == minY || y == maxY) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        visitor.accept(x, y, z);
+                    }
+                } else {
+                    // only the two z faces remain in this row
+                    visitor.accept(x, y, minZ);
+                    if (maxZ != minZ) {
+                        visitor.accept(x, y, maxZ);
                     }
                 }
             }
-            return false;
+        }
+    }
+
+    private static class WarCuboidIterator implements Iterator<WarLocation> {
+        private final int minX, minY, minZ, maxX, maxY, maxZ;
+        private final String world;
+        private final boolean shell;
+        private int x, y, z;
+
+        WarCuboidIterator(WarCuboid cuboid, boolean shell) {
+            minX = cuboid.minX;
+            minY = cuboid.minY;
+            minZ = cuboid.minZ;
+            maxX = cuboid.maxX;
+            maxY = cuboid.maxY;
+            maxZ = cuboid.maxZ;
+            world = cuboid.world;
+            this.shell = shell;
+            x = minX;
+            y = minY;
+            z = minZ;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return x <= maxX;
         }
 
         @Override
         public WarLocation next() {
-            int li = 0;
-            for (int x = cuboid.getMinBlock().getBlockX(); x <= cuboid.getMaxBlock().getBlockX(); x++) {
-                for (int y = cuboid.getMinBlock().getBlockY(); y <= cuboid.getMaxBlock().getBlockY(); y++) {
-                    for (int z = cuboid.getMinBlock().getBlockZ(); z <= cuboid.getMaxBlock().getBlockZ(); z++) {
-                        if (li++ == i) {
-                            i++;
-                            return new WarLocation(x, y, z, cuboid.getMinBlock().getWorld());
-                        }
-                    }
+            if (!hasNext()) {
+                throw new NoSuchElementException("Iterator out");
+            }
+            WarLocation location = new WarLocation(x, y, z, world);
+            if (shell && z == minZ && z < maxZ && x != minX && x != maxX && y != minY && y != maxY) {
+                // interior row of the shell: jump from one z face straight to the other
+                z = maxZ;
+            } else if (++z > maxZ) {
+                z = minZ;
+                if (++y > maxY) {
+                    y = minY;
+                    x++;
                 }
             }
-            throw new IllegalStateException("Iterator out");
+            return location;
         }
     }
 }
@@ -0,0 +1,294 @@
+package com.tommytony.war.struct;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact copy of the blocks in a box, stored as a palette of distinct block types and a packed array of palette ids.
+ * Ids are packed into 64-bit words using the fewest bits that fit the palette, growing as types are added, so a
+ * volume of a few block types takes a few bits per block. The words may be kept on the heap or in a direct buffer
+ * outside of it. Serialized block data, such as sign text or chest contents, is kept in a sparse map by block index.
+ * <p>
+ * Blocks are indexed by Y, then Z, then X, relative to the minimum corner of the box. Not thread safe.
+ */
+public class ZoneSnapshot {
+    private final int sizeX, sizeY, sizeZ;
+    private final boolean offHeap;
+    private final List<WarBlock> palette;
+    private final Map<String, Integer> paletteIds;
+    private final Map<Integer, String> serialized;
+    private LongBuffer words;
+    private int bits;
+    private int perWord;
+
+    /**
+     * Create a snapshot with every block set to palette id 0.
+     *
+     * @param sizeX   size of the box in X dimension.
+     * @param sizeY   size of the box in Y dimension.
+     * @param sizeZ   size of the box in Z dimension.
+     * @param offHeap true to keep the ids in a direct buffer rather than on the heap.
+     */
+    public ZoneSnapshot(int sizeX, int sizeY, int sizeZ, boolean offHeap) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.offHeap = offHeap;
+        this.palette = new ArrayList<>();
+        this.paletteIds = new HashMap<>();
+        this.serialized = new HashMap<>();
+        this.bits = 1;
+        this.perWord = 64;
+        this.words = allocate(wordsFor(sizeX * sizeY * sizeZ, perWord));
+    }
+
+    /**
+     * Create a snapshot on the heap with every block set to palette id 0.
+     *
+     * @param sizeX size of the box in X dimension.
+     * @param sizeY size of the box in Y dimension.
+     * @param sizeZ size of the box in Z dimension.
+     */
+    public ZoneSnapshot(int sizeX, int sizeY, int sizeZ) {
+        this(sizeX, sizeY, sizeZ, false);
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    /**
+     * Get the number of blocks in the box.
+     *
+     * @return block count.
+     */
+    public int getVolume() {
+        return sizeX * sizeY * sizeZ;
+    }
+
+    /**
+     * Get the block index of a position.
+     *
+     * @param x position relative to the minimum corner in X dimension.
+     * @param y position relative to the minimum corner in Y dimension.
+     * @param z position relative to the minimum corner in Z dimension.
+     * @return block index.
+     */
+    public int index(int x, int y, int z) {
+        return (y * sizeZ + z) * sizeX + x;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Get the number of bits each block id currently takes.
+     *
+     * @return bits per block.
+     */
+    public int getBitsPerBlock() {
+        return bits;
+    }
+
+    /**
+     * Add a block type to the palette if it is not already present.
+     *
+     * @param name block name.
+     * @param meta block metadata.
+     * @return palette id of the block type.
+     */
+    public int addPalette(String name, short meta) {
+        String key = name + '\0' + meta;
+        Integer id = paletteIds.get(key);
+        if (id == null) {
+            id = palette.size();
+            paletteIds.put(key, id);
+            palette.add(new WarBlock(name, null, "", meta));
+            if (id >= 1 << bits) {
+                resize(bits + 1);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Get the block types used in the snapshot.
+     *
+     * @return read-only palette, in order of palette id. Entries must not be modified.
+     */
+    public List<WarBlock> getPalette() {
+        return Collections.unmodifiableList(palette);
+    }
+
+    /**
+     * Get the palette id of a block.
+     *
+     * @param index block index.
+     * @return palette id.
+     */
+    public int getId(int index) {
+        int word = index / perWord, shift = index % perWord * bits;
+        return (int) (words.get(word) >>> shift & (1L << bits) - 1);
+    }
+
+    /**
+     * Set the palette id of a block. Serialized data of the block is left unchanged.
+     *
+     * @param index block index.
+     * @param id    palette id, which must already be in the palette.
+     */
+    public void setId(int index, int id) {
+        int word = index / perWord, shift = index % perWord * bits;
+        long mask = ((1L << bits) - 1) << shift;
+        words.put(word, words.get(word) & ~mask | ((long) id << shift) & mask);
+    }
+
+    /**
+     * Get serialized block data, for blocks that have any.
+     *
+     * @return read-only mapping of block index to serialized data.
+     */
+    public Map<Integer, String> getSerialized() {
+        return Collections.unmodifiableMap(serialized);
+    }
+
+    /**
+     * Set or clear the serialized data of a block.
+     *
+     * @param index block index.
+     * @param data  serialized block data, or null or empty for none.
+     */
+    public void setSerialized(int index, String data) {
+        if (data != null && !data.isEmpty()) {
+            serialized.put(index, data);
+        } else {
+            serialized.remove(index);
+        }
+    }
+
+    /**
+     * Set a block, adding its type to the palette if needed.
+     *
+     * @param index block index.
+     * @param block block type and data.
+     */
+    public void set(int index, WarBlock block) {
+        setId(index, addPalette(block.getBlockName(), block.getMeta()));
+        setSerialized(index, block.getSerialized());
+    }
+
+    /**
+     * Get a block. Blocks without serialized data share a palette instance, which must not be modified.
+     *
+     * @param index block index.
+     * @return block type and data.
+     */
+    public WarBlock get(int index) {
+        WarBlock type = palette.get(getId(index));
+        String data = serialized.get(index);
+        if (data == null) {
+            return type;
+        }
+        return new WarBlock(type.getBlockName(), null, data, type.getMeta());
+    }
+
+    /**
+     * Visit the palette ids of part of the snapshot, in index order.
+     *
+     * @param start    first block index to visit.
+     * @param end      block index to stop before.
+     * @param consumer receives the relative position and palette id of each block.
+     */
+    public void forEachId(int start, int end, IdConsumer consumer) {
+        int x = start % sizeX, z = start / sizeX % sizeZ, y = start / sizeX / sizeZ;
+        int word = start / perWord, slot = start % perWord;
+        long mask = (1L << bits) - 1;
+        long current = start < end ? words.get(word) >>> slot * bits : 0;
+        for (int index = start; index < end; index++) {
+            consumer.accept(x, y, z, (int) (current & mask));
+            current >>>= bits;
+            if (++slot == perWord && index + 1 < end) {
+                slot = 0;
+                current = words.get(++word);
+            }
+            if (++x == sizeX) {
+                x = 0;
+                if (++z == sizeZ) {
+                    z = 0;
+                    y++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimate the memory used by the snapshot, on or off the heap.
+     *
+     * @return approximate size in bytes.
+     */
+    public long getMemorySize() {
+        long size = 96 + 8L * words.capacity();
+        for (WarBlock type : palette) {
+            size += 96 + 2L * type.getBlockName().length();
+        }
+        for (String data : serialized.values()) {
+            size += 80 + 2L * data.length();
+        }
+        return size;
+    }
+
+    private void resize(int newBits) {
+        int volume = getVolume();
+        int newPerWord = 64 / newBits;
+        LongBuffer resized = allocate(wordsFor(volume, newPerWord));
+        for (int index = 0; index < volume; index++) {
+            long id = getId(index);
+            int word = index / newPerWord;
+            resized.put(word, resized.get(word) | id << index % newPerWord * newBits);
+        }
+        words = resized;
+        bits = newBits;
+        perWord = newPerWord;
+    }
+
+    private LongBuffer allocate(int count) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(count * 8).asLongBuffer();
+        }
+        return LongBuffer.allocate(count);
+    }
+
+    private static int wordsFor(int volume, int perWord) {
+        return Math.max(1, (volume + perWord - 1) / perWord);
+    }
+
+    /**
+     * Operation accepting the position and palette id of a block.
+     */
+    @FunctionalInterface
+    public interface IdConsumer {
+        /**
+         * Perform the operation on a block.
+         *
+         * @param x  position relative to the minimum corner in X dimension.
+         * @param y  position relative to the minimum corner in Y dimension.
+         * @param z  position relative to the minimum corner in Z dimension.
+         * @param id palette id of the block.
+         */
+        void accept(int x, int y, int z, int id);
+    }
+}
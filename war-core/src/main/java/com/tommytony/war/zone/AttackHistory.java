@@ -0,0 +1,95 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.WarPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recent attacks against a single defender, kept in a fixed size ring buffer. Older attacks are overwritten as new
+ * ones arrive, so memory use does not grow over the course of a game.
+ */
+class AttackHistory {
+    private final WarPlayer[] attackers;
+    private final long[] times;
+    private int head;
+    private int size;
+
+    /**
+     * Create an empty attack history.
+     *
+     * @param capacity maximum number of attacks remembered.
+     */
+    AttackHistory(int capacity) {
+        attackers = new WarPlayer[capacity];
+        times = new long[capacity];
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Record an attack. Repeated hits from the most recent attacker only refresh the time of their attack.
+     *
+     * @param attacker player responsible for the attack.
+     * @param time     time of the attack, in milliseconds.
+     */
+    void add(WarPlayer attacker, long time) {
+        if (size > 0 && attackers[head] == attacker) {
+            times[head] = time;
+            return;
+        }
+        head = (head + 1) % attackers.length;
+        attackers[head] = attacker;
+        times[head] = time;
+        if (size < attackers.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Get the player that made the most recent attack.
+     *
+     * @param now    current time, in milliseconds.
+     * @param maxAge time after which an attack is no longer credited, in milliseconds.
+     * @return attacker or null if there are no recent attacks.
+     */
+    WarPlayer getLastAttacker(long now, long maxAge) {
+        if (size == 0 || now - times[head] >= maxAge) {
+            return null;
+        }
+        return attackers[head];
+    }
+
+    /**
+     * Get other players that made recent attacks, in order from most to least recent.
+     *
+     * @param now    current time, in milliseconds.
+     * @param maxAge time after which an attack is no longer credited, in milliseconds.
+     * @return distinct recent attackers, not including the last attacker.
+     */
+    List<WarPlayer> getAssists(long now, long maxAge) {
+        List<WarPlayer> assists = new ArrayList<>();
+        WarPlayer killer = getLastAttacker(now, maxAge);
+        for (int i = 1; i < size; i++) {
+            int index = (head - i + attackers.length) % attackers.length;
+            if (now - times[index] >= maxAge) {
+                break;
+            }
+            WarPlayer attacker = attackers[index];
+            if (attacker != killer && !assists.contains(attacker)) {
+                assists.add(attacker);
+            }
+        }
+        return assists;
+    }
+
+    /**
+     * Forget all recorded attacks, such as after the defender has died.
+     */
+    void clear() {
+        for (int i = 0; i < attackers.length; i++) {
+            attackers[i] = null;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,138 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarLocation;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Original state of blocks changed in a zone during a round, so that only those blocks need to be restored when the
+ * round ends. Only the first change to each block is recorded. If more blocks change than the journal can hold, it is
+ * marked as overflowed and the whole zone must be reset instead.
+ */
+class BlockJournal {
+    private final int capacity;
+    private final Map<Long, WarBlock> originals;
+    private boolean overflowed;
+
+    /**
+     * Create an empty journal.
+     *
+     * @param capacity most blocks to remember before overflowing.
+     */
+    BlockJournal(int capacity) {
+        this.capacity = capacity;
+        this.originals = new HashMap<>();
+        this.overflowed = false;
+    }
+
+    /**
+     * Record a block that is about to change, or has changed.
+     *
+     * @param x        block position in X dimension.
+     * @param y        block position in Y dimension.
+     * @param z        block position in Z dimension.
+     * @param original supplier of the block state before the change. Only called the first time the block changes.
+     */
+    void record(int x, int y, int z, Supplier<WarBlock> original) {
+        if (overflowed) {
+            return;
+        }
+        long key = ZoneIndex.blockKey(x, y, z);
+        if (originals.containsKey(key)) {
+            return;
+        }
+        if (originals.size() >= capacity) {
+            overflow();
+            return;
+        }
+        originals.put(key, original.get());
+    }
+
+    /**
+     * Give up on tracking changes, so that the whole zone is reset instead.
+     */
+    void overflow() {
+        overflowed = true;
+        originals.clear(); // a full reset will be needed anyway
+    }
+
+    /**
+     * Get the recorded original state of a block.
+     *
+     * @param x block position in X dimension.
+     * @param y block position in Y dimension.
+     * @param z block position in Z dimension.
+     * @return original state, or null if the block is not recorded or has already been restored.
+     */
+    WarBlock getOriginal(int x, int y, int z) {
+        return originals.get(ZoneIndex.blockKey(x, y, z));
+    }
+
+    /**
+     * Check if more blocks changed than the journal could hold.
+     *
+     * @return true if the whole zone must be reset.
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Get the number of blocks recorded.
+     *
+     * @return changed block count.
+     */
+    int size() {
+        return originals.size();
+    }
+
+    /**
+     * Visit the original state of every recorded block.
+     *
+     * @param world    world of the zone.
+     * @param consumer receives the location and original state of each block.
+     */
+    void forEach(String world, BiConsumer<WarLocation, WarBlock> consumer) {
+        for (Map.Entry<Long, WarBlock> entry : originals.entrySet()) {
+            long key = entry.getKey();
+            consumer.accept(new WarLocation(ZoneIndex.blockX(key), ZoneIndex.blockY(key), ZoneIndex.blockZ(key), world),
+                    entry.getValue());
+        }
+    }
+
+    /**
+     * Prepare to put back the original state of every recorded block, a step at a time. Blocks are forgotten as they
+     * are restored, so {@link #getOriginal} only finds blocks the job has not reached yet. The journal must not be
+     * changed while the job is running.
+     *
+     * @param world    world of the zone.
+     * @param consumer receives the location and original state of each block.
+     * @return job restoring up to {@link ResetScheduler#BLOCKS_PER_STEP} blocks per step.
+     */
+    ResetScheduler.Job restoreJob(String world, BiConsumer<WarLocation, WarBlock> consumer) {
+        Iterator<Map.Entry<Long, WarBlock>> it = originals.entrySet().iterator();
+        return () -> {
+            for (int i = 0; i < ResetScheduler.BLOCKS_PER_STEP && it.hasNext(); i++) {
+                Map.Entry<Long, WarBlock> entry = it.next();
+                long key = entry.getKey();
+                consumer.accept(new WarLocation(ZoneIndex.blockX(key), ZoneIndex.blockY(key), ZoneIndex.blockZ(key),
+                        world), entry.getValue());
+                it.remove();
+            }
+            return it.hasNext();
+        };
+    }
+
+    /**
+     * Forget all recorded blocks, such as after they have been restored.
+     */
+    void clear() {
+        originals.clear();
+        overflowed = false;
+    }
+}
@@ -0,0 +1,412 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.ZoneSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of a zone volume, held in memory as a {@link ZoneSnapshot} of a palette of distinct block types and packed
+ * palette indices. Coordinates are implicit in the position of each block, which is ordered by Y, then Z, then X,
+ * relative to the minimum corner of the zone. Serialized block data, such as sign text or chest contents, is kept
+ * separately.
+ * <p>
+ * When encoded for storage, the indices are written as a bit stream using the fewest bits that fit every palette
+ * entry. Runs of the same block, most often air, are collapsed into a single run token.
+ */
+class BlockVolume {
+    /**
+     * Token marking a run of one block type, followed by the palette entry and the length of the run.
+     */
+    private static final int RUN = 0;
+    private final int sizeX, sizeY, sizeZ;
+    private final ZoneSnapshot blocks;
+
+    /**
+     * Create an empty volume. All blocks must be set before the volume is encoded.
+     *
+     * @param sizeX   size of the volume in X dimension.
+     * @param sizeY   size of the volume in Y dimension.
+     * @param sizeZ   size of the volume in Z dimension.
+     * @param offHeap true to keep the blocks outside of the heap.
+     */
+    BlockVolume(int sizeX, int sizeY, int sizeZ, boolean offHeap) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.blocks = new ZoneSnapshot(sizeX, sizeY, sizeZ, offHeap);
+    }
+
+    /**
+     * Create an empty volume on the heap. All blocks must be set before the volume is encoded.
+     *
+     * @param sizeX size of the volume in X dimension.
+     * @param sizeY size of the volume in Y dimension.
+     * @param sizeZ size of the volume in Z dimension.
+     */
+    BlockVolume(int sizeX, int sizeY, int sizeZ) {
+        this(sizeX, sizeY, sizeZ, false);
+    }
+
+    int getSizeX() {
+        return sizeX;
+    }
+
+    int getSizeY() {
+        return sizeY;
+    }
+
+    int getSizeZ() {
+        return sizeZ;
+    }
+
+    int getVolume() {
+        return blocks.getVolume();
+    }
+
+    /**
+     * Get the packed blocks of the volume.
+     *
+     * @return blocks, which must not be changed if the volume is shared.
+     */
+    ZoneSnapshot getSnapshot() {
+        return blocks;
+    }
+
+    /**
+     * Estimate the memory used by the volume.
+     *
+     * @return approximate size in bytes.
+     */
+    long getMemorySize() {
+        return 32 + blocks.getMemorySize();
+    }
+
+    /**
+     * Add a block type to the palette if it is not already present.
+     *
+     * @param name block name.
+     * @param meta block metadata.
+     * @return palette entry for the block type.
+     */
+    int addPalette(String name, short meta) {
+        return blocks.addPalette(name, meta);
+    }
+
+    /**
+     * Get the block types used in the volume.
+     *
+     * @return read-only palette, in order of palette entry.
+     */
+    List<WarBlock> getPalette() {
+        return blocks.getPalette();
+    }
+
+    /**
+     * Get serialized block data, for blocks that have any.
+     *
+     * @return read-only mapping of block index to serialized data.
+     */
+    Map<Integer, String> getSerialized() {
+        return blocks.getSerialized();
+    }
+
+    /**
+     * Set serialized block data by block index, as loaded from storage.
+     *
+     * @param index      block index within the volume.
+     * @param serialized serialized block data.
+     */
+    void setSerialized(int index, String serialized) {
+        blocks.setSerialized(index, serialized);
+    }
+
+    /**
+     * Set a block in the volume.
+     *
+     * @param x     position relative to the minimum corner in X dimension.
+     * @param y     position relative to the minimum corner in Y dimension.
+     * @param z     position relative to the minimum corner in Z dimension.
+     * @param block block type and data.
+     */
+    void set(int x, int y, int z, WarBlock block) {
+        blocks.set(blocks.index(x, y, z), block);
+    }
+
+    /**
+     * Get a block in the volume. Blocks without serialized data share a palette instance, which must not be modified.
+     *
+     * @param x position relative to the minimum corner in X dimension.
+     * @param y position relative to the minimum corner in Y dimension.
+     * @param z position relative to the minimum corner in Z dimension.
+     * @return block type and data.
+     */
+    WarBlock get(int x, int y, int z) {
+        return blocks.get(blocks.index(x, y, z));
+    }
+
+    /**
+     * Copy part of the volume into a new volume.
+     *
+     * @param fromX minimum corner of the part in X dimension.
+     * @param fromY minimum corner of the part in Y dimension.
+     * @param fromZ minimum corner of the part in Z dimension.
+     * @param sizeX size of the part in X dimension.
+     * @param sizeY size of the part in Y dimension.
+     * @param sizeZ size of the part in Z dimension.
+     * @return copy of the blocks in the part.
+     */
+    BlockVolume copy(int fromX, int fromY, int fromZ, int sizeX, int sizeY, int sizeZ) {
+        BlockVolume copy = new BlockVolume(sizeX, sizeY, sizeZ);
+        for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+                for (int x = 0; x < sizeX; x++) {
+                    copy.set(x, y, z, get(fromX + x, fromY + y, fromZ + z));
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Visit every block in the volume, in storage order.
+     *
+     * @param consumer receives the relative position and block.
+     */
+    void forEach(BlockConsumer consumer) {
+        forEach(0, getVolume(), consumer);
+    }
+
+    /**
+     * Visit part of the volume, in storage order. Used to spread the work of placing a volume over several ticks.
+     *
+     * @param start    first storage index to visit.
+     * @param end      storage index to stop before.
+     * @param consumer receives the relative position and block.
+     */
+    void forEach(int start, int end, BlockConsumer consumer) {
+        List<WarBlock> palette = blocks.getPalette();
+        Map<Integer, String> serialized = blocks.getSerialized();
+        if (serialized.isEmpty()) {
+            blocks.forEachId(start, end, (x, y, z, id) -> consumer.accept(x, y, z, palette.get(id)));
+        } else {
+            blocks.forEachId(start, end, (x, y, z, id) -> {
+                String data = serialized.get(blocks.index(x, y, z));
+                WarBlock type = palette.get(id);
+                consumer.accept(x, y, z, data == null ? type : new WarBlock(type.getBlockName(), null, data, type.getMeta()));
+            });
+        }
+    }
+
+    /**
+     * Encode the palette indices of all blocks as a bit stream.
+     *
+     * @return encoded block indices.
+     */
+    byte[] encode() {
+        int volume = blocks.getVolume();
+        int bits = bitsFor(blocks.getPalette().size());
+        int runBits = bitsFor(volume - 1);
+        // a run token costs two tokens and a length, so shorter runs are written block by block
+        int minRun = (2 * bits + runBits) / bits + 1;
+        BitWriter writer = new BitWriter(volume * bits / 8 + 16);
+        int i = 0;
+        while (i < volume) {
+            int block = blocks.getId(i);
+            int run = 1;
+            while (i + run < volume && blocks.getId(i + run) == block) {
+                run++;
+            }
+            if (run >= minRun) {
+                writer.write(RUN, bits);
+                writer.write(block + 1, bits);
+                writer.write(run - 1, runBits);
+                i += run;
+            } else {
+                for (int j = 0; j < run; j++) {
+                    writer.write(block + 1, bits);
+                }
+                i += run;
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decode the palette indices of all blocks from a bit stream. The palette must be loaded first.
+     *
+     * @param data encoded block indices.
+     * @throws IllegalStateException if the data does not match the size of the volume or palette.
+     */
+    void decode(byte[] data) {
+        int volume = blocks.getVolume();
+        int paletteSize = blocks.getPalette().size();
+        int bits = bitsFor(paletteSize);
+        int runBits = bitsFor(volume - 1);
+        BitReader reader = new BitReader(data);
+        int i = 0;
+        while (i < volume) {
+            int token = reader.read(bits);
+            int run = 1;
+            if (token == RUN) {
+                token = reader.read(bits);
+                run = reader.read(runBits) + 1;
+            }
+            if (token < 1 || token > paletteSize || i + run > volume) {
+                throw new IllegalStateException("Corrupt block data at block " + i);
+            }
+            for (int j = 0; j < run; j++) {
+                blocks.setId(i++, token - 1);
+            }
+        }
+    }
+
+    /**
+     * Write the volume, including its size, palette, and serialized block data.
+     *
+     * @param out stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(sizeX);
+        out.writeInt(sizeY);
+        out.writeInt(sizeZ);
+        out.writeInt(blocks.getPalette().size());
+        for (WarBlock type : blocks.getPalette()) {
+            writeString(out, type.getBlockName());
+            out.writeShort(type.getMeta());
+        }
+        byte[] encoded = encode();
+        out.writeInt(encoded.length);
+        out.write(encoded);
+        out.writeInt(blocks.getSerialized().size());
+        for (Map.Entry<Integer, String> entry : blocks.getSerialized().entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Read a volume written by {@link #writeTo(DataOutputStream)} onto the heap.
+     *
+     * @param in stream to read from.
+     * @return volume read.
+     * @throws IOException if the stream cannot be read.
+     * @throws IllegalStateException if the volume data is corrupt.
+     */
+    static BlockVolume readFrom(DataInputStream in) throws IOException {
+        return readFrom(in, false);
+    }
+
+    /**
+     * Read a volume written by {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in      stream to read from.
+     * @param offHeap true to keep the blocks outside of the heap.
+     * @return volume read.
+     * @throws IOException if the stream cannot be read.
+     * @throws IllegalStateException if the volume data is corrupt.
+     */
+    static BlockVolume readFrom(DataInputStream in, boolean offHeap) throws IOException {
+        BlockVolume volume = new BlockVolume(in.readInt(), in.readInt(), in.readInt(), offHeap);
+        int paletteSize = in.readInt();
+        for (int i = 0; i < paletteSize; i++) {
+            volume.addPalette(readString(in), in.readShort());
+        }
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        volume.decode(encoded);
+        int serializedCount = in.readInt();
+        for (int i = 0; i < serializedCount; i++) {
+            volume.setSerialized(in.readInt(), readString(in));
+        }
+        return volume;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of bits needed to store values from zero to a maximum.
+     *
+     * @param max maximum value.
+     * @return bit count, at least one.
+     */
+    private static int bitsFor(int max) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+    }
+
+    @FunctionalInterface
+    interface BlockConsumer {
+        void accept(int x, int y, int z, WarBlock block);
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out;
+        private long buffer;
+        private int count;
+
+        BitWriter(int capacity) {
+            out = new ByteArrayOutputStream(capacity);
+        }
+
+        void write(int value, int bits) {
+            buffer |= ((long) value & ((1L << bits) - 1)) << count;
+            count += bits;
+            while (count >= 8) {
+                out.write((int) buffer);
+                buffer >>>= 8;
+                count -= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (count > 0) {
+                out.write((int) buffer);
+                buffer = 0;
+                count = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private int position;
+        private long buffer;
+        private int count;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int read(int bits) {
+            while (count < bits) {
+                if (position >= data.length) {
+                    throw new IllegalStateException("Unexpected end of block data");
+                }
+                buffer |= (long) (data[position++] & 0xFF) << count;
+                count += 8;
+            }
+            int value = (int) (buffer & ((1L << bits) - 1));
+            buffer >>>= bits;
+            count -= bits;
+            return value;
+        }
+    }
+}
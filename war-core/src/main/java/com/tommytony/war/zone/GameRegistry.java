@@ -0,0 +1,59 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.WarPlayer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Lookup of the game and team each player is currently playing in, by player ID. Updated by {@link WarGame} as
+ * players join and leave, so membership checks do not need to search every zone.
+ */
+public class GameRegistry {
+    private final Map<UUID, WarGame.Team> players;
+
+    public GameRegistry() {
+        players = new HashMap<>();
+    }
+
+    void add(WarPlayer player, WarGame.Team team) {
+        players.put(player.getPlayerId(), team);
+    }
+
+    void remove(WarPlayer player) {
+        players.remove(player.getPlayerId());
+    }
+
+    /**
+     * Get the team a player is playing for.
+     *
+     * @param player player to look up.
+     * @return team information or null if the player is not playing.
+     */
+    public WarGame.Team getTeam(WarPlayer player) {
+        return players.get(player.getPlayerId());
+    }
+
+    /**
+     * Get the game a player is playing in.
+     *
+     * @param player player to look up.
+     * @return active game or null if the player is not playing.
+     */
+    public WarGame getGame(WarPlayer player) {
+        WarGame.Team team = getTeam(player);
+        return team != null ? team.getGame() : null;
+    }
+
+    /**
+     * Get the warzone a player is playing in.
+     *
+     * @param player player to look up.
+     * @return warzone with active game or null if the player is not playing.
+     */
+    public Warzone getWarzone(WarPlayer player) {
+        WarGame.Team team = getTeam(player);
+        return team != null ? team.getGame().getWarzone() : null;
+    }
+}
@@ -0,0 +1,292 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Restores or captures warzone blocks a little at a time on the server thread, so that resetting or saving large zones
+ * does not freeze the server. Every tick, pending work takes turns doing a small step of work until the time budget set by
+ * {@link WarConfig.WarSetting#RESETBUDGET} is used up. Each zone gets the same number of steps in a tick, so zones
+ * resetting at the same time share the budget evenly.
+ */
+public class ResetScheduler {
+    /**
+     * Most blocks placed by a reset in one step. The time budget is checked between steps.
+     */
+    static final int BLOCKS_PER_STEP = 256;
+    private static final long FINISH_TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+    private final ServerAPI plugin;
+    private final LongSupplier clock;
+    private final Map<Warzone, Entry> pending;
+    private long completedSteps;
+
+    /**
+     * Create a reset scheduler. Call {@link #start()} once the server scheduler is available.
+     *
+     * @param plugin War plugin.
+     */
+    public ResetScheduler(ServerAPI plugin) {
+        this(plugin, System::nanoTime);
+    }
+
+    ResetScheduler(ServerAPI plugin, LongSupplier clock) {
+        this.plugin = plugin;
+        this.clock = clock;
+        this.pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Begin processing resets every server tick.
+     */
+    public void start() {
+        plugin.scheduleTask(0.05, 0.05, this::tick);
+    }
+
+    /**
+     * Queue work on a warzone. Work on the same zone is run in order. A full reset replaces any other reset still
+     * queued for the zone, and is merged with a full reset that has not started yet.
+     *
+     * @param zone zone being reset.
+     * @param job  work to do.
+     * @param full true if the job resets the entire zone.
+     * @return future completed on the server thread once the job is finished, or once the full reset it was merged
+     * into or replaced by is finished.
+     */
+    CompletableFuture<Void> submit(Warzone zone, Job job, boolean full) {
+        Entry entry = pending.get(zone);
+        if (entry == null) {
+            entry = new Entry();
+            pending.put(zone, entry);
+        } else if (full && entry.unstartedFull != null) {
+            job.cancel();
+            return entry.unstartedFull.future;
+        }
+        Pending added = new Pending(job);
+        if (full) {
+            entry.jobs.removeIf(queued -> {
+                if (queued.job.isReset()) {
+                    queued.job.cancel();
+                    added.future.whenComplete((result, error) -> {
+                        if (error != null) {
+                            queued.future.completeExceptionally(error);
+                        } else {
+                            queued.future.complete(null);
+                        }
+                    });
+                    return true;
+                }
+                return false;
+            });
+            entry.unstartedFull = added;
+        }
+        entry.jobs.add(added);
+        return added.future;
+    }
+
+    /**
+     * Get the full reset of a warzone that has not started yet, which another full reset would be merged into. Lets
+     * callers skip preparing a job that would only be discarded.
+     *
+     * @param zone zone to check.
+     * @return future of the waiting full reset, or null if there is none.
+     */
+    CompletableFuture<Void> getUnstartedFull(Warzone zone) {
+        Entry entry = pending.get(zone);
+        return entry != null && entry.unstartedFull != null ? entry.unstartedFull.future : null;
+    }
+
+    /**
+     * Stop resetting a warzone. Blocks already restored are left in place.
+     *
+     * @param zone zone to stop resetting.
+     * @return true if a reset was pending.
+     */
+    public boolean cancel(Warzone zone) {
+        Entry entry = pending.remove(zone);
+        if (entry == null) {
+            return false;
+        }
+        for (Pending queued : entry.jobs) {
+            queued.job.cancel();
+            queued.future.cancel(false);
+        }
+        return true;
+    }
+
+    /**
+     * Check if a warzone has reset work waiting.
+     *
+     * @param zone zone to check.
+     * @return true if the zone is being reset.
+     */
+    public boolean isResetting(Warzone zone) {
+        return pending.containsKey(zone);
+    }
+
+    /**
+     * Get the number of warzones being reset.
+     *
+     * @return pending reset count.
+     */
+    public int getPendingResets() {
+        return pending.size();
+    }
+
+    /**
+     * Get the number of reset steps run since the server started.
+     *
+     * @return step count.
+     */
+    public long getCompletedSteps() {
+        return completedSteps;
+    }
+
+    /**
+     * Run pending resets until the time budget for this tick is used up.
+     */
+    void tick() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long budget = plugin.getWarConfig().getInt(WarConfig.WarSetting.RESETBUDGET) * 1_000_000L;
+        long deadline = clock.getAsLong() + budget;
+        List<Warzone> turns = new ArrayList<>(pending.keySet());
+        do {
+            // zones waiting on another thread sit out the rest of the tick
+            turns.removeIf(zone -> {
+                Entry entry = pending.get(zone);
+                return entry == null || !step(zone, entry);
+            });
+        } while (!turns.isEmpty() && clock.getAsLong() < deadline);
+    }
+
+    /**
+     * Run all pending resets to completion, such as when the server is shutting down. Gives up after a minute, and
+     * cancels whatever is left.
+     */
+    public void finishAll() {
+        long deadline = clock.getAsLong() + FINISH_TIMEOUT;
+        while (!pending.isEmpty()) {
+            if (clock.getAsLong() - deadline >= 0) {
+                for (Warzone zone : new ArrayList<>(pending.keySet())) {
+                    plugin.logInfo(String.format("Gave up waiting for the reset of zone %s.", zone.getName()));
+                    cancel(zone);
+                }
+                return;
+            }
+            Map.Entry<Warzone, Entry> next = pending.entrySet().iterator().next();
+            if (!step(next.getKey(), next.getValue())) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Run one step of the next job of a zone.
+     *
+     * @return true if the zone has more work that is ready to run.
+     */
+    private boolean step(Warzone zone, Entry entry) {
+        Pending current = entry.jobs.peek();
+        if (!current.job.isReady()) {
+            return false;
+        }
+        boolean more;
+        try {
+            more = current.job.step();
+        } catch (RuntimeException e) {
+            // only this job fails, the rest of the zone's work carries on
+            current.job.cancel();
+            plugin.logInfo(String.format("Failed to reset zone %s: %s", zone.getName(), e.getMessage()));
+            finish(zone, entry);
+            current.future.completeExceptionally(e);
+            return !entry.jobs.isEmpty();
+        }
+        completedSteps++;
+        if (entry.unstartedFull == current) {
+            entry.unstartedFull = null;
+        }
+        if (!more) {
+            finish(zone, entry);
+            current.future.complete(null);
+            return !entry.jobs.isEmpty();
+        }
+        return true;
+    }
+
+    /**
+     * Remove the current job of a zone, and the zone once it has no more work. Done before completing the job's
+     * future, so that work queued by its completion actions is not lost.
+     */
+    private void finish(Warzone zone, Entry entry) {
+        Pending done = entry.jobs.remove();
+        if (entry.unstartedFull == done) {
+            entry.unstartedFull = null;
+        }
+        if (entry.jobs.isEmpty()) {
+            pending.remove(zone);
+        }
+    }
+
+    /**
+     * Work on a zone broken into small steps.
+     */
+    interface Job {
+        /**
+         * Do a small amount of work, such as placing up to {@link #BLOCKS_PER_STEP} blocks.
+         *
+         * @return true if there is more work to do.
+         */
+        boolean step();
+
+        /**
+         * Check if the job can do work now, rather than waiting for another thread. Jobs that are not ready are
+         * skipped until the next tick.
+         *
+         * @return true if {@link #step()} would do work.
+         */
+        default boolean isReady() {
+            return true;
+        }
+
+        /**
+         * Release anything held by the job when it will not be run to completion.
+         */
+        default void cancel() {
+        }
+
+        /**
+         * Check if the job only restores blocks, so that it is made redundant by a full reset.
+         *
+         * @return true for resets.
+         */
+        default boolean isReset() {
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        private final Deque<Pending> jobs = new ArrayDeque<>();
+        // a full reset that has not done any work yet, making another full reset redundant
+        private Pending unstartedFull;
+    }
+
+    private static final class Pending {
+        private final Job job;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(Job job) {
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.tommytony.war.zone;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Copy of the saved block sections of a zone in a file next to the zone database, read through a memory map so that
+ * loading sections does not go through the database driver. The database is the master copy; the file is stamped with
+ * the block revision of the database it was written from, and is ignored when the revision does not match.
+ * <p>
+ * The file is big-endian, starting with a header of the magic number, format version, block revision, section count
+ * and a CRC32 of the section index. The index follows, with the position, data offset, data length and data checksum
+ * of every section, in the order sections are loaded. Section data follows the index, encoded as in the database.
+ * Only used on the zone storage codec thread.
+ */
+class SectionFile {
+    private static final int MAGIC = 0x57415253; // WARS
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8;
+    private static final int ENTRY_SIZE = 4 + 4 + 4 + 8 + 4 + 8;
+    private final File file;
+    private MappedByteBuffer map;
+    private long revision;
+    private int count;
+
+    /**
+     * Manage a section file. Nothing is read until the file is opened.
+     *
+     * @param file location of the file.
+     */
+    SectionFile(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Map the file if it is not already mapped, and check that it is intact and written from a revision.
+     *
+     * @param expected block revision of the database.
+     * @return true if the file can be read, false if it is missing, damaged or out of date.
+     */
+    boolean open(long expected) {
+        if (map != null && revision == expected) {
+            return true;
+        }
+        map = null;
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION || mapped.getLong(8) != expected) {
+                return false;
+            }
+            int sections = mapped.getInt(16);
+            if (sections < 0 || HEADER_SIZE + (long) sections * ENTRY_SIZE > size) {
+                return false;
+            }
+            ByteBuffer index = mapped.duplicate();
+            // cast so that the Java 8 Buffer methods are linked when built on a newer JDK
+            ((Buffer) index).position(HEADER_SIZE).limit(HEADER_SIZE + sections * ENTRY_SIZE);
+            if (checksum(index) != mapped.getLong(20)) {
+                return false;
+            }
+            for (int i = 0; i < sections; i++) {
+                int entry = HEADER_SIZE + i * ENTRY_SIZE;
+                long offset = mapped.getLong(entry + 12);
+                int length = mapped.getInt(entry + 20);
+                if (offset < 0 || length < 0 || offset + length > size) {
+                    return false;
+                }
+            }
+            map = mapped;
+            revision = expected;
+            count = sections;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read every section in a range from the mapped file, in the order they were written.
+     *
+     * @param range   section range, as returned by {@link ZoneStorage#sectionRange}.
+     * @param visitor receives each section.
+     */
+    void read(int[] range, SectionVisitor visitor) {
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            int sx = map.getInt(entry), sy = map.getInt(entry + 4), sz = map.getInt(entry + 8);
+            if (sx < range[0] || sx > range[3] || sy < range[1] || sy > range[4] || sz < range[2] || sz > range[5]) {
+                continue;
+            }
+            ByteBuffer data = map.duplicate();
+            ((Buffer) data).position((int) map.getLong(entry + 12));
+            byte[] bytes = new byte[map.getInt(entry + 20)];
+            data.get(bytes);
+            visitor.visit(sx, sy, sz, map.getLong(entry + 24), bytes);
+        }
+    }
+
+    /**
+     * Read every section in a range from a list, in order.
+     *
+     * @param sections sections to read.
+     * @param range    section range, as returned by {@link ZoneStorage#sectionRange}.
+     * @param visitor  receives each section.
+     */
+    static void read(List<Section> sections, int[] range, SectionVisitor visitor) {
+        for (Section section : sections) {
+            if (section.sx < range[0] || section.sx > range[3] || section.sy < range[1] || section.sy > range[4]
+                    || section.sz < range[2] || section.sz > range[5]) {
+                continue;
+            }
+            visitor.visit(section.sx, section.sy, section.sz, section.checksum, section.data);
+        }
+    }
+
+    /**
+     * Replace the file with a new copy of the sections. The copy is written to a temporary file first and moved into
+     * place, so the file is never seen half written.
+     *
+     * @param revision block revision of the database the sections are from.
+     * @param sections every saved section, in the order they are loaded.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(long revision, List<Section> sections) throws IOException {
+        map = null;
+        ByteBuffer index = ByteBuffer.allocate(sections.size() * ENTRY_SIZE);
+        long offset = HEADER_SIZE + (long) sections.size() * ENTRY_SIZE;
+        for (Section section : sections) {
+            index.putInt(section.sx).putInt(section.sy).putInt(section.sz);
+            index.putLong(offset).putInt(section.data.length).putLong(section.checksum);
+            offset += section.data.length;
+        }
+        ((Buffer) index).flip();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(revision);
+            out.writeInt(sections.size());
+            out.writeLong(checksum(index.duplicate()));
+            out.write(index.array());
+            for (Section section : sections) {
+                out.write(section.data);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forget the mapping, so the file is checked again when next opened.
+     */
+    void close() {
+        map = null;
+    }
+
+    private static long checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * An encoded section to write.
+     */
+    static final class Section {
+        private final int sx, sy, sz;
+        private final long checksum;
+        private final byte[] data;
+
+        Section(int sx, int sy, int sz, long checksum, byte[] data) {
+            this.sx = sx;
+            this.sy = sy;
+            this.sz = sz;
+            this.checksum = checksum;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Receives sections read from the file.
+     */
+    interface SectionVisitor {
+        void visit(int sx, int sy, int sz, long checksum, byte[] data);
+    }
+}
@@ -0,0 +1,181 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarConfig;
+import com.tommytony.war.struct.WarLocation;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the decoded saved blocks of recently reset warzones in memory, so that zones reset often do not read them from
+ * disk every time. The cache is shared by all zones, and the least recently used zones are dropped once the total size
+ * exceeds the budget set by {@link WarConfig.WarSetting#SNAPSHOTCACHE}. Only used on the server thread.
+ */
+public class SnapshotCache {
+    private final LongSupplier budget;
+    private final Map<Warzone, Entry> entries;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param plugin War plugin, for the cache budget.
+     */
+    public SnapshotCache(ServerAPI plugin) {
+        this(() -> plugin.getWarConfig().getInt(WarConfig.WarSetting.SNAPSHOTCACHE) * 1024L * 1024L);
+    }
+
+    SnapshotCache(LongSupplier budget) {
+        this.budget = budget;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the cached blocks of a warzone, marking them as recently used.
+     *
+     * @param zone zone to look up.
+     * @return cached blocks, or null if the zone is not cached.
+     */
+    Entry get(Warzone zone) {
+        Entry entry = entries.get(zone);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Cache the blocks of a warzone, replacing any cached before, and drop the least recently used zones until the
+     * cache fits its budget. Blocks larger than the whole budget are not cached.
+     *
+     * @param zone  zone the blocks were read from.
+     * @param entry decoded blocks, which must not be changed afterwards.
+     */
+    void put(Warzone zone, Entry entry) {
+        invalidate(zone);
+        long limit = budget.getAsLong();
+        if (entry.size > limit) {
+            return;
+        }
+        entries.put(zone, entry);
+        size += entry.size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > limit) {
+            size -= eldest.next().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drop the cached blocks of a warzone, such as when it is saved.
+     *
+     * @param zone zone to drop.
+     */
+    void invalidate(Warzone zone) {
+        Entry removed = entries.remove(zone);
+        if (removed != null) {
+            size -= removed.size;
+        }
+    }
+
+    /**
+     * Get the number of warzones cached.
+     *
+     * @return cached zone count.
+     */
+    public int getCachedZones() {
+        return entries.size();
+    }
+
+    /**
+     * Get the estimated heap used by the cached blocks.
+     *
+     * @return size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the cache budget.
+     *
+     * @return budget in bytes.
+     */
+    public long getBudget() {
+        return budget.getAsLong();
+    }
+
+    /**
+     * Get the number of lookups that found a cached zone since the server started.
+     *
+     * @return hit count.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that had to read from disk since the server started.
+     *
+     * @return miss count.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of zones dropped to stay within the budget since the server started.
+     *
+     * @return eviction count.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Decoded saved blocks of an entire warzone.
+     */
+    static final class Entry {
+        private final WarLocation origin;
+        private final Map<Long, BlockVolume> sections;
+        private final long size;
+
+        /**
+         * Hold decoded blocks.
+         *
+         * @param origin   position1 of the zone when the blocks were read, which sections are relative to.
+         * @param sections decoded sections by {@link ZoneIndex#blockKey} of their section position.
+         */
+        Entry(WarLocation origin, Map<Long, BlockVolume> sections) {
+            this.origin = origin;
+            this.sections = Collections.unmodifiableMap(sections);
+            long total = 0;
+            for (BlockVolume section : sections.values()) {
+                total += 48 + section.getMemorySize(); // plus the map entry
+            }
+            this.size = total;
+        }
+
+        WarLocation getOrigin() {
+            return origin;
+        }
+
+        Map<Long, BlockVolume> getSections() {
+            return sections;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
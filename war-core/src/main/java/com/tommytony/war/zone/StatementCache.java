@@ -0,0 +1,71 @@
+package com.tommytony.war.zone;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled statements for a database connection, kept for reuse by SQL text. Statements returned by the cache are
+ * owned by it and must not be closed by the caller, and must not be used again until any result set from their last
+ * execution is closed.
+ */
+public class StatementCache implements AutoCloseable {
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * Create an empty statement cache.
+     *
+     * @param connection database connection to prepare statements on.
+     */
+    public StatementCache(Connection connection) {
+        this.connection = connection;
+        this.statements = new HashMap<>();
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get a compiled statement for some SQL, preparing it if it is not in the cache. Parameters from any previous use of
+     * the statement are cleared.
+     *
+     * @param sql SQL statement text.
+     * @return prepared statement.
+     * @throws SQLException if the statement cannot be prepared.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /**
+     * Close all cached statements. The connection itself is left open.
+     *
+     * @throws SQLException if a statement cannot be closed.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        statements.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
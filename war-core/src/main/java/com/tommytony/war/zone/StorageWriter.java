@@ -0,0 +1,309 @@
+package com.tommytony.war.zone;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Applies all writes to a database on a single thread with its own connection, so callers never wait on the disk.
+ * <p>
+ * Queued writes are committed in batches. The batch size grows while commits are fast and shrinks when they are slow,
+ * so a busy queue is written with few commits without holding the database locked for long. When the queue is full,
+ * callers wait for room. Reads on other connections must {@link #flush()} first to see earlier writes.
+ */
+public class StorageWriter implements AutoCloseable {
+    /**
+     * Most writes waiting to be applied before callers must wait.
+     */
+    static final int QUEUE_CAPACITY = 4096;
+    /**
+     * Largest number of writes committed together.
+     */
+    static final int MAX_BATCH_SIZE = 10000;
+    /**
+     * Commit time the batch size is adjusted towards.
+     */
+    static final long TARGET_COMMIT_MS = 50;
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+    private final String name;
+    private final StatementCache statements;
+    private final Consumer<String> log;
+    private final BlockingQueue<Operation> queue;
+    private final Thread thread;
+    private volatile boolean closing;
+    /**
+     * Set once the writer thread has exited, after which nothing will be applied.
+     */
+    private volatile boolean stopped;
+    private volatile int batchSize;
+
+    /**
+     * Start a writer thread for a database.
+     *
+     * @param name       name of the database, for the thread name and log messages.
+     * @param statements statement cache of a connection used only by this writer, closed with it.
+     * @param log        receives progress and error messages.
+     */
+    public StorageWriter(String name, StatementCache statements, Consumer<String> log) {
+        this.name = name;
+        this.statements = statements;
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.batchSize = 1;
+        this.thread = new Thread(this::run, "War storage writer - " + name);
+        this.thread.setDaemon(true); // close() drains the queue, this only keeps a forgotten writer from hanging the server
+        this.thread.start();
+    }
+
+    /**
+     * Queue a write. Waits for room if the queue is full.
+     *
+     * @param write change to the database, run on the writer thread with the writer's statements. May be run again
+     *              if the batch it was committed in fails, so it should only change the database.
+     * @return future completed on the writer thread once the write is committed. Completion actions must not queue
+     * more writes, as the writer cannot wait for room in its own queue.
+     * @throws IllegalStateException if the writer is closed or has stopped.
+     */
+    public CompletableFuture<Void> submit(Write write) {
+        Operation operation = new Operation(write);
+        synchronized (this) {
+            if (closing || stopped) {
+                throw new IllegalStateException(String.format("Storage for %s is closed.", name));
+            }
+            if (!queue.offer(operation)) {
+                log.accept(String.format("Waiting for storage writes to %s to catch up...", name));
+                try {
+                    while (!queue.offer(operation, 1, TimeUnit.SECONDS)) {
+                        if (stopped) {
+                            throw new IllegalStateException(String.format("Storage writer for %s has stopped.", name));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while queueing a storage write.", e);
+                }
+            }
+        }
+        if (stopped) {
+            failPending(); // the writer exited while this was being queued
+        }
+        return operation.future;
+    }
+
+    /**
+     * Queue a read, run on the writer thread after every write queued before it, so it sees them without a flush.
+     *
+     * @param read query of the database. May be run again if the batch it was run in fails, in which case only the
+     *             result of the last run is used.
+     * @param <T>  type of result.
+     * @return future completed on the writer thread with the result, once the batch it was read in is committed.
+     * Completion actions must not queue writes.
+     * @throws IllegalStateException if the writer is closed.
+     */
+    public <T> CompletableFuture<T> read(Read<T> read) {
+        AtomicReference<T> result = new AtomicReference<>();
+        return submit(statements -> result.set(read.apply(statements))).thenApply(nothing -> result.get());
+    }
+
+    /**
+     * Wait until every write queued so far is committed.
+     *
+     * @throws RuntimeException wrapping SQLException, if the last queued write failed.
+     */
+    public void flush() {
+        if (Thread.currentThread() == thread) {
+            return; // everything before the current write is already applied
+        }
+        try {
+            submit(statements -> {
+            }).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the number of writes waiting to be applied.
+     *
+     * @return queued write count.
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of writes currently committed together.
+     *
+     * @return batch size.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    StatementCache getStatements() {
+        return statements;
+    }
+
+    private void run() {
+        List<Operation> batch = new ArrayList<>();
+        try {
+            while (true) {
+                Operation first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    continue; // only closing stops the writer
+                }
+                if (first == null) {
+                    if (closing && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            log.accept(String.format("Storage writer for %s stopped: %s", name, e));
+            for (Operation operation : batch) {
+                operation.future.completeExceptionally(e);
+            }
+        } finally {
+            stopped = true;
+            failPending();
+        }
+    }
+
+    /**
+     * Fail every queued write, once the writer thread is gone, so nothing waits on them forever.
+     */
+    private void failPending() {
+        Operation operation;
+        while ((operation = queue.poll()) != null) {
+            operation.future.completeExceptionally(
+                    new IllegalStateException(String.format("Storage writer for %s has stopped.", name)));
+        }
+    }
+
+    private void commit(List<Operation> batch) {
+        Connection connection = statements.getConnection();
+        long start = System.nanoTime();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (Operation operation : batch) {
+                    operation.write.apply(statements);
+                }
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (Throwable e) {
+            // errors fail only the write that threw them, rather than stopping the writer with writes still queued
+            try {
+                connection.rollback();
+            } catch (Throwable suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            batchSize = Math.max(1, batchSize / 2);
+            if (batch.size() == 1) {
+                log.accept(String.format("Failed to write to %s: %s", name, e));
+                batch.get(0).future.completeExceptionally(e);
+            } else {
+                // find the failing write, and keep the rest
+                for (Operation operation : batch) {
+                    commit(Collections.singletonList(operation));
+                }
+            }
+            return;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (millis > TARGET_COMMIT_MS) {
+            batchSize = Math.max(1, batchSize / 2);
+        } else if (millis < TARGET_COMMIT_MS / 2 && batch.size() >= batchSize) {
+            batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+        }
+        for (Operation operation : batch) {
+            operation.future.complete(null);
+        }
+    }
+
+    /**
+     * Stop accepting writes and wait for all queued writes to be committed, then close the connection.
+     *
+     * @throws SQLException if the connection cannot be closed.
+     */
+    @Override
+    public void close() throws SQLException {
+        synchronized (this) {
+            closing = true;
+        }
+        long start = System.currentTimeMillis();
+        while (thread.isAlive()) {
+            try {
+                thread.join(PROGRESS_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (thread.isAlive()) {
+                log.accept(String.format("Still writing to %s, %d changes left after %d seconds.", name,
+                        queue.size(), (System.currentTimeMillis() - start) / 1000));
+            }
+        }
+        try {
+            statements.close();
+        } finally {
+            statements.getConnection().close();
+        }
+    }
+
+    /**
+     * A change to the database.
+     */
+    public interface Write {
+        /**
+         * Apply the change.
+         *
+         * @param statements statements of the writer's connection.
+         * @throws SQLException if the change fails. Other writes in the same batch are kept.
+         */
+        void apply(StatementCache statements) throws SQLException;
+    }
+
+    /**
+     * A query of the database.
+     *
+     * @param <T> type of result.
+     */
+    public interface Read<T> {
+        /**
+         * Run the query.
+         *
+         * @param statements statements of the writer's connection.
+         * @return result of the query.
+         * @throws SQLException if the query fails.
+         */
+        T apply(StatementCache statements) throws SQLException;
+    }
+
+    private static final class Operation {
+        private final Write write;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Operation(Write write) {
+            this.write = write;
+        }
+    }
+}
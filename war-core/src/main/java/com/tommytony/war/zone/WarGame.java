@@ -4,32 +4,57 @@ import com.google.common.collect.ImmutableList;
 import com.tommytony.war.ServerAPI;
 import com.tommytony.war.WarPlayer;
 import com.tommytony.war.item.WarColor;
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarLocation;
 
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Active game in a warzone.
  */
 public class WarGame {
+    /**
+     * Number of recent attacks remembered for each defender, for crediting kills and assists.
+     */
+    private static final int ATTACK_HISTORY_SIZE = 4;
     private final Warzone warzone;
     private final ServerAPI plugin;
-    private List<WarPlayer> players;
+    private Set<WarPlayer> players;
+    private Map<WarPlayer, Team> playerTeams;
     private List<Team> teams;
-    private List<Attack> attacks;
+    private Map<String, Team> teamsByName;
+    private NavigableSet<Team> teamsBySize;
+    private Random random;
+    private Map<WarPlayer, AttackHistory> attacks;
     private Map<WarPlayer, WarPlayer.PlayerState> inventories;
+    private BlockJournal journal; // created on the first block change
     private int round;
 
     WarGame(Warzone warzone, ServerAPI plugin) {
         this.warzone = warzone;
         this.plugin = plugin;
-        players = new ArrayList<>();
+        players = Collections.newSetFromMap(new IdentityHashMap<>());
+        playerTeams = new IdentityHashMap<>();
         teams = new ArrayList<>();
         teams.addAll(warzone.getTeams().stream().map(Team::new).collect(Collectors.toList()));
+        teamsByName = new HashMap<>();
+        random = new Random();
+        teamsBySize = new TreeSet<>(Comparator.comparingInt(Team::getSize)
+                .thenComparingInt(team -> team.tiebreak).thenComparingInt(team -> team.sequence));
+        for (int i = 0; i < teams.size(); i++) {
+            Team team = teams.get(i);
+            team.sequence = i;
+            team.tiebreak = random.nextInt();
+            teamsByName.put(team.getName().toLowerCase(), team);
+            teamsBySize.add(team);
+        }
         round = 0;
-        attacks = new ArrayList<>();
-        inventories = new HashMap<>();
+        attacks = new IdentityHashMap<>();
+        inventories = new IdentityHashMap<>();
     }
 
     /**
@@ -39,7 +64,7 @@ public class WarGame {
      * @return team information or null if not found.
      */
     public Team getTeam(String teamName) {
-        return teams.stream().filter(team -> team.getName().equalsIgnoreCase(teamName)).findFirst().orElse(null);
+        return teamsByName.get(teamName.toLowerCase());
     }
 
     /**
@@ -49,7 +74,7 @@ public class WarGame {
      * @return team information or null if not found.
      */
     public Team getPlayerTeam(WarPlayer player) {
-        return teams.stream().filter(team -> team.players.contains(player)).findFirst().orElse(null);
+        return playerTeams.get(player);
     }
 
     /**
@@ -59,11 +84,16 @@ public class WarGame {
      * @return true if player is playing.
      */
     public boolean isPlaying(WarPlayer player) {
-        return players.contains(player);
+        return playerTeams.containsKey(player);
+    }
+
+    public Warzone getWarzone() {
+        return warzone;
     }
 
     /**
-     * Assign a player to a team, picking the team with the least number of players.
+     * Assign a player to a team, picking the team with the least number of players. Ties between teams of the same size
+     * are broken randomly.
      *
      * @param player player to assign.
      */
@@ -71,12 +101,7 @@ public class WarGame {
         if (teams.size() == 0) {
             throw new IllegalStateException("No teams in this warzone.");
         }
-        Collections.shuffle(teams);
-        Optional<Team> first = teams.stream().sorted(Comparator.comparingInt(team -> team.players.size())).findFirst();
-        if (!first.isPresent()) {
-            throw new IllegalStateException("No teams found.");
-        }
-        assign(player, first.get());
+        assign(player, teamsBySize.first());
     }
 
     /**
@@ -99,16 +124,17 @@ public class WarGame {
             throw new IllegalStateException("Already playing in another zone.");
         }
         players.add(player);
+        playerTeams.put(player, team);
+        teamsBySize.remove(team);
         team.players.add(player);
+        team.tiebreak = random.nextInt();
+        teamsBySize.add(team);
+        plugin.getGameRegistry().add(player, team);
         savePlayerState(player);
         resetPlayerState(player);
-        StringBuilder teamPlayers = new StringBuilder();
-        List<WarPlayer> players1 = team.players;
-        for (int i = 0, players1Size = players1.size(); i < players1Size; i++) {
-            WarPlayer teamPlayer = players1.get(i);
-            teamPlayers.append(teamPlayer.getName());
-            if (i < players1Size - 1)
-                teamPlayers.append(", ");
+        StringJoiner teamPlayers = new StringJoiner(", ");
+        for (WarPlayer teamPlayer : team.players) {
+            teamPlayers.add(teamPlayer.getName());
         }
         player.sendMessage(MessageFormat.format("Welcome to team {0}. Points: {1}/{2}. Teammates: {3}",
                 team.getName(), team.getPoints(), warzone.getConfig().getInt(ZoneSetting.MAXPOINTS), teamPlayers.toString()));
@@ -142,20 +168,38 @@ public class WarGame {
     }
 
     void checkForEndRound() {
+        int maxPoints = warzone.getConfig().getInt(ZoneSetting.MAXPOINTS);
+        boolean close = false;
         for (Team team : teams) {
-            if (team.getPoints() >= warzone.getConfig().getInt(ZoneSetting.MAXPOINTS)) {
+            if (team.getPoints() >= maxPoints) {
                 broadcast(MessageFormat.format("Team {0} wins!", team.getName()));
                 endRound();
                 return;
             }
+            close |= team.getPoints() >= maxPoints - warzone.getConfig().getInt(ZoneSetting.PREFETCHPOINTS);
+        }
+        if (close && journal != null && journal.isOverflowed()) {
+            // the round will end with a full reset, so read the zone before it is needed
+            warzone.prefetchReset();
         }
     }
 
     /**
-     * End the current round in the warzone. This reloads all blocks and resets all team points. If the round counter
-     * has exceeded the maximum rounds for this warzone, then all players are removed.
+     * End the current round in the warzone. This restores all changed blocks and resets all team points. If the round
+     * counter has exceeded the maximum rounds for this warzone, then all players are removed. Otherwise, players are
+     * respawned once the blocks have been restored.
      */
     public void endRound() {
+        endRound(false);
+    }
+
+    /**
+     * End the current round in the warzone, as {@link #endRound()} does.
+     *
+     * @param fullReset true to reset the entire zone from its save, rather than only the blocks changed in the round.
+     * @return future completed once the zone is restored.
+     */
+    public CompletableFuture<Void> endRound(boolean fullReset) {
         boolean gameOver = round++ >= warzone.getConfig().getInt(ZoneSetting.MAXROUNDS);
         StringBuilder builder = new StringBuilder();
         if (gameOver) {
@@ -172,10 +216,20 @@ public class WarGame {
         broadcast(builder.toString());
         if (gameOver) {
             ImmutableList.copyOf(players).forEach(this::removePlayer);
-        } else {
-            players.forEach(this::resetPlayerState);
         }
-        warzone.reset();
+        // an empty journal still clears dropped items
+        BlockJournal ending = journal != null ? journal : new BlockJournal(0);
+        if (fullReset) {
+            ending.overflow();
+        }
+        journal = null; // the next round gets a new journal, this one is in use until restored
+        CompletableFuture<Void> restored = warzone.restore(ending);
+        restored.whenComplete((result, error) -> {
+            if (!gameOver) {
+                ImmutableList.copyOf(players).forEach(this::resetPlayerState);
+            }
+        });
+        return restored;
     }
 
     /**
@@ -191,8 +245,14 @@ public class WarGame {
     }
 
     private void removePlayerSilent(WarPlayer player) {
-        getPlayerTeam(player).players.remove(player);
+        Team team = playerTeams.remove(player);
+        teamsBySize.remove(team);
+        team.players.remove(player);
+        team.tiebreak = random.nextInt();
+        teamsBySize.add(team);
         players.remove(player);
+        plugin.getGameRegistry().remove(player);
+        attacks.remove(player);
         player.setLocation(warzone.getTeleport());
         restorePlayerState(player);
         if (players.isEmpty()) {
@@ -205,30 +265,64 @@ public class WarGame {
      */
     public void forceEndGame() {
         round = Integer.MAX_VALUE;
-        endRound();
+        endRound(true);
     }
 
-    List<Attack> getAttacks() {
-        return attacks;
+    /**
+     * Get recent attacks against a player.
+     *
+     * @param defender player that was attacked.
+     * @return attack history, or null if the player has not been attacked.
+     */
+    AttackHistory getAttacks(WarPlayer defender) {
+        return attacks.get(defender);
     }
 
     void addAttack(WarPlayer attacker, WarPlayer defender) {
-        for (Iterator<WarGame.Attack> iterator = this.getAttacks().iterator(); iterator.hasNext(); ) {
-            WarGame.Attack attack = iterator.next();
-            if (attack.getDefender() == defender)
-                iterator.remove();
+        attacks.computeIfAbsent(defender, p -> new AttackHistory(ATTACK_HISTORY_SIZE))
+                .add(attacker, System.currentTimeMillis());
+    }
+
+    /**
+     * Record the original state of a block in the zone before it is changed during the round. While the previous round,
+     * possibly of an earlier game, is still being restored, a block it has not restored yet is recorded with the state it is about to be restored
+     * to, rather than its current state.
+     *
+     * @param location location of the block.
+     * @param original supplier of the block state before the change, called only the first time the block changes.
+     */
+    public void recordBlockChange(WarLocation location, Supplier<WarBlock> original) {
+        if (journal == null) {
+            journal = new BlockJournal(warzone.getConfig().getInt(ZoneSetting.JOURNALSIZE));
         }
-        attacks.add(new Attack(attacker, defender, System.currentTimeMillis()));
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        BlockJournal restoring = warzone.getRestoring();
+        if (restoring != null) {
+            if (restoring.isOverflowed()) {
+                // the reset from the save may not have reached this block, so only another full reset is safe
+                journal.overflow();
+                return;
+            }
+            WarBlock pending = restoring.getOriginal(x, y, z);
+            if (pending != null) {
+                journal.record(x, y, z, () -> pending);
+                return;
+            }
+        }
+        journal.record(x, y, z, original);
     }
 
     public class Team {
         private String name;
-        private List<WarPlayer> players;
+        private Set<WarPlayer> players;
         private int points;
+        // ordering within teamsBySize, which must be removed and re-added around any change to these or players
+        private int tiebreak;
+        private int sequence;
 
         Team(String name) {
             this.name = name;
-            players = new ArrayList<>();
+            players = Collections.newSetFromMap(new IdentityHashMap<>());
             points = 0;
         }
 
@@ -236,6 +330,19 @@ public class WarGame {
             return name;
         }
 
+        /**
+         * Get the game this team is playing in.
+         *
+         * @return game of the team.
+         */
+        public WarGame getGame() {
+            return WarGame.this;
+        }
+
+        int getSize() {
+            return players.size();
+        }
+
         int getPoints() {
             return points;
         }
@@ -262,27 +369,4 @@ public class WarGame {
         }
     }
 
-    class Attack {
-        private WarPlayer attacker, defender;
-        private long time;
-
-        Attack(WarPlayer attacker, WarPlayer defender, long time) {
-            this.attacker = attacker;
-            this.defender = defender;
-            this.time = time;
-        }
-
-        WarPlayer getDefender() {
-            return defender;
-        }
-
-        long getTime() {
-            return time;
-        }
-
-        WarPlayer getAttacker() {
-            return attacker;
-        }
-    }
-
 }
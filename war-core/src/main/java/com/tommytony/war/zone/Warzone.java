@@ -14,6 +14,7 @@ import java.text.MessageFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Representation of a war zone area, blocks, and settings.
@@ -26,7 +27,8 @@ public class Warzone implements AutoCloseable {
     private final ServerAPI plugin;
     private final ZoneListener listener;
     private WarGame game;
-    private Map<WarLocation, String> gates;
+    private ZoneCapture capture;
+    private BlockJournal restoring; // journal of the last round ended, until its blocks are restored
 
     /**
      * Load or create a war zone from the war settings store.
@@ -39,7 +41,8 @@ public class Warzone implements AutoCloseable {
         this.plugin = plugin;
         try {
             this.db = new ZoneStorage(this, plugin);
-            this.config = new ZoneConfig(db.getConnection(), "settings", plugin.getWarConfig().getZoneDefaults());
+            this.config = new ZoneConfig(db.getStatements(), db.getWriter(), "settings",
+                    plugin.getWarConfig().getZoneDefaults());
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
@@ -49,18 +52,15 @@ public class Warzone implements AutoCloseable {
     /**
      * Get a cuboid containing all blocks in the warzone.
      *
-     * @return cuboid region for zone.
+     * @return cuboid region for zone, or null if the area of the zone has not been set.
      */
     public WarCuboid getCuboid() {
-        try {
-            return new WarCuboid(db.getPosition("position1"), db.getPosition("position2"));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return db.getPoints().getCuboid();
     }
 
     /**
-     * Set the area the zone occupies. Updates position1 and position2 in the database.
+     * Set the area the zone occupies. Updates position1 and position2 in the database, and moves the zone in the
+     * server zone index.
      *
      * @param cuboid Cuboid region of zone space.
      */
@@ -71,6 +71,7 @@ public class Warzone implements AutoCloseable {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        plugin.getZoneIndex().update(this);
     }
 
     public String getName() {
@@ -84,15 +85,11 @@ public class Warzone implements AutoCloseable {
      * @throws IllegalStateException if no lobby exists.
      */
     public WarLocation getTeleport() {
-        try {
-            if (db.hasPosition("lobby")) {
-                return db.getPosition("lobby");
-            } else {
-                throw new IllegalStateException(MessageFormat.format("No lobby found for zone {0}.", name));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        WarLocation lobby = db.getPosition("lobby");
+        if (lobby == null) {
+            throw new IllegalStateException(MessageFormat.format("No lobby found for zone {0}.", name));
         }
+        return lobby;
     }
 
     /**
@@ -102,7 +99,8 @@ public class Warzone implements AutoCloseable {
      * @throws IllegalArgumentException illegal lobby location.
      */
     public void setTeleport(WarLocation location) {
-        if (this.getCuboid().contains(location)) {
+        WarCuboid cuboid = this.getCuboid();
+        if (cuboid != null && cuboid.contains(location)) {
             throw new IllegalArgumentException("Lobby position cannot be set inside of a zone.");
         }
         try {
@@ -113,16 +111,12 @@ public class Warzone implements AutoCloseable {
     }
 
     /**
-     * Get a list of teams in this zone. This function is based on the team spawn locations saved in the database.
+     * Get a list of teams in this zone. This function is based on the team spawn locations saved in the zone.
      *
      * @return list of teams.
      */
     public List<String> getTeams() {
-        try {
-            return db.getTeams();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return db.getTeams();
     }
 
     /**
@@ -132,11 +126,7 @@ public class Warzone implements AutoCloseable {
      * @return location of spawn.
      */
     public WarLocation getTeamSpawn(String teamName) {
-        try {
-            return db.getPosition("teamspawn" + teamName);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return db.getPosition("teamspawn" + teamName);
     }
 
     /**
@@ -147,7 +137,8 @@ public class Warzone implements AutoCloseable {
      * @throws IllegalArgumentException illegal spawn position.
      */
     public void setTeamSpawn(String teamName, WarLocation location) {
-        if (!this.getCuboid().contains(location)) {
+        WarCuboid cuboid = this.getCuboid();
+        if (cuboid == null || !cuboid.contains(location)) {
             throw new IllegalArgumentException("Team spawn position must be set inside of a zone.");
         }
         try {
@@ -210,21 +201,138 @@ public class Warzone implements AutoCloseable {
         }
     }
 
+    /**
+     * Save all blocks in the warzone as they are right now, without blocking the server. Blocks are read from the world
+     * a few at a time over the following ticks, and written to disk on another thread. Blocks changed while the save
+     * is running are saved as they were when it started, so the save is safe to run during a game. Requests made while
+     * a save is running share the running save.
+     *
+     * @return future completed on a zone storage thread once the save is written.
+     */
+    public CompletableFuture<Void> scheduleSave() {
+        if (capture != null && !capture.getFuture().isDone()) {
+            return capture.getFuture();
+        }
+        plugin.logInfo("Saving zone " + this.getName() + "...");
+        capture = db.openCapture(this.getCuboid());
+        plugin.getResetScheduler().submit(this, capture, false);
+        return capture.getFuture();
+    }
+
+    /**
+     * Get the save in progress, which must be told about block changes.
+     *
+     * @return running save, or null if the zone has never been saved in the background.
+     */
+    ZoneCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Save the blocks of part of the warzone. The zone is saved in sections of 16x16x16 blocks, so blocks near the
+     * region are saved as well. This will block on the current thread until finished.
+     *
+     * @param region part of the warzone to save.
+     */
+    public void save(WarCuboid region) {
+        try {
+            db.saveBlocks(region);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replace the blocks in part of the warzone with the blocks stored in the warzone database. The zone is loaded in
+     * sections of 16x16x16 blocks, so blocks near the region are reset as well. This will block on the current thread
+     * until finished.
+     *
+     * @param region part of the warzone to reset.
+     */
+    public void reset(WarCuboid region) {
+        plugin.removeEntity(region, WarEntity.ITEM);
+        try {
+            db.loadBlocks(region);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replace all the blocks in the region of the warzone with the blocks stored in the warzone database, a few at a
+     * time over the following ticks. Blocks are read and decoded in the background. Requests made while a reset is
+     * already waiting to start are merged into it.
+     *
+     * @return future completed once the zone is reset, or cancelled if the reset is cancelled.
+     */
+    public CompletableFuture<Void> scheduleReset() {
+        CompletableFuture<Void> waiting = plugin.getResetScheduler().getUnstartedFull(this);
+        if (waiting != null) {
+            return waiting;
+        }
+        plugin.logInfo("Reloading zone " + this.getName() + "...");
+        plugin.removeEntity(this.getCuboid(), WarEntity.ITEM);
+        return plugin.getResetScheduler().submit(this, db.openLoad(this.getCuboid()), true);
+    }
+
+    /**
+     * Start reading the saved blocks of the warzone in the background, ahead of a reset that is expected soon. The
+     * next reset then only has to place blocks. Does nothing if the blocks are already being read.
+     */
+    public void prefetchReset() {
+        if (!db.isPrefetched()) {
+            db.prefetch(this.getCuboid());
+        }
+    }
+
+    /**
+     * Put back the blocks changed during a round, a few at a time over the following ticks. If too many blocks
+     * changed to be tracked, the entire zone is reset instead.
+     *
+     * @param journal original state of changed blocks, which must not be changed afterwards.
+     * @return future completed once the blocks are restored.
+     */
+    CompletableFuture<Void> restore(BlockJournal journal) {
+        CompletableFuture<Void> restored;
+        if (journal.isOverflowed()) {
+            restored = scheduleReset();
+        } else {
+            plugin.logInfo(MessageFormat.format("Restoring {0} blocks in zone {1}...", journal.size(), this.getName()));
+            plugin.removeEntity(this.getCuboid(), WarEntity.ITEM);
+            restored = plugin.getResetScheduler().submit(this,
+                    journal.restoreJob(this.getCuboid().getWorld(), plugin::setBlock), false);
+        }
+        restoring = journal;
+        restored.whenComplete((result, error) -> {
+            if (restoring == journal) {
+                restoring = null;
+            }
+        });
+        return restored;
+    }
+
+    /**
+     * Get the journal of the round being restored, which outlives the game that ended the round if it was the last.
+     *
+     * @return journal of blocks not yet known to be restored, or null if no restore is in progress.
+     */
+    BlockJournal getRestoring() {
+        return restoring;
+    }
+
     /**
      * Create a wall around the warzone to prevent the entry of a specific player.
      *
      * @param player target of block updates.
      */
     public void mask(WarPlayer player) {
-        for (WarLocation loc : this.getCuboid()) {
-            // following condition checks if the block is on a face of the cuboid
-            if (loc.getBlockX() == this.getCuboid().getMinBlock().getBlockX() || loc.getBlockX() == this.getCuboid().getMaxBlock().getBlockX()
-                    || loc.getBlockY() == this.getCuboid().getMinBlock().getBlockY() || loc.getBlockY() == this.getCuboid().getMaxBlock().getBlockY()
-                    || loc.getBlockZ() == this.getCuboid().getMinBlock().getBlockZ() || loc.getBlockZ() == this.getCuboid().getMaxBlock().getBlockZ()) {
-                if (plugin.getBlock(loc, true).getBlockName().toLowerCase().contains("air"))
-                    player.setLocalBlock(loc, new WarBlock("minecraft:glass", null, "", (short) 0));
-            }
-        }
+        WarCuboid cuboid = this.getCuboid();
+        String world = cuboid.getWorld();
+        WarBlock glass = new WarBlock("minecraft:glass", null, "", (short) 0);
+        cuboid.forEachShellBlock((x, y, z) -> {
+            if (plugin.getBlock(world, x, y, z, true).getBlockName().toLowerCase().contains("air"))
+                player.setLocalBlock(new WarLocation(x, y, z, world), glass);
+        });
     }
 
     /**
@@ -234,18 +342,16 @@ public class Warzone implements AutoCloseable {
      * @param player target of block updates.
      */
     public void unmask(WarPlayer player) {
-        for (WarLocation loc : this.getCuboid()) {
-            // following condition checks if the block is on a face of the cuboid
-            if (loc.getBlockX() == this.getCuboid().getMinBlock().getBlockX() || loc.getBlockX() == this.getCuboid().getMaxBlock().getBlockX()
-                    || loc.getBlockY() == this.getCuboid().getMinBlock().getBlockY() || loc.getBlockY() == this.getCuboid().getMaxBlock().getBlockY()
-                    || loc.getBlockZ() == this.getCuboid().getMinBlock().getBlockZ() || loc.getBlockZ() == this.getCuboid().getMaxBlock().getBlockZ()) {
-                player.setLocalBlock(loc, plugin.getBlock(loc, false));
-            }
-        }
+        WarCuboid cuboid = this.getCuboid();
+        String world = cuboid.getWorld();
+        cuboid.forEachShellBlock((x, y, z) -> {
+            WarLocation loc = new WarLocation(x, y, z, world);
+            player.setLocalBlock(loc, plugin.getBlock(loc, false));
+        });
     }
 
     /**
-     * Closes the warzone's underlying database, saving all information.
+     * Closes the warzone's underlying database and its cached statements, waiting for all queued writes.
      * @throws Exception if the database cannot be closed.
      */
     @Override
@@ -285,15 +391,16 @@ public class Warzone implements AutoCloseable {
         if (!gateName.equals("autoassign") && getTeamSpawn(gateName) == null) {
             throw new IllegalArgumentException("Gate must be for an existing team or set to autoassign.");
         }
-        if (this.getCuboid().contains(location)) {
+        WarCuboid cuboid = this.getCuboid();
+        if (cuboid != null && cuboid.contains(location)) {
             throw new IllegalArgumentException("Gate position cannot be set inside of a zone.");
         }
-        gates = null;
         try {
             db.setPosition("gate" + gateName, location);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        plugin.getZoneIndex().updateGates(this);
     }
 
     /**
@@ -302,30 +409,22 @@ public class Warzone implements AutoCloseable {
      * @param gateName either a valid team name or 'autoassign'.
      */
     public void deleteGate(String gateName) {
-        gates = null;
         try {
             db.deletePosition("gate" + gateName);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        plugin.getZoneIndex().updateGates(this);
     }
 
     /**
-     * Get the location of all gates linking to this warzone. The result is cached in memory for efficient lookup when
-     * a player moves.
+     * Get the location of all gates linking to this warzone. Gates are also indexed by the server zone index for
+     * efficient lookup when a player moves.
      *
-     * @return mapping of locations to gate names.
+     * @return read-only mapping of locations to gate names.
      */
     public Map<WarLocation, String> getGates() {
-        if (gates != null) {
-            return gates;
-        }
-        try {
-            gates = db.getGates();
-            return gates;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return db.getGates();
     }
 
     /**
@@ -0,0 +1,199 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarCuboid;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static com.tommytony.war.zone.ZoneStorage.SECTION_SIZE;
+
+/**
+ * Captures the blocks of a warzone as they were when the capture started, a step at a time on the server thread.
+ * Sections are captured one after another, so a block may change before its section is reached. The first time such a
+ * block changes, its original state is recorded and used in place of the live block when the section is captured.
+ * Each captured section is handed to a sink, which encodes and writes it off the server thread.
+ */
+class ZoneCapture implements ResetScheduler.Job {
+    private final ServerAPI plugin;
+    private final String world;
+    private final int originX, originY, originZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final int minSx, minSy, minSz, countSx, countSy, countSz;
+    private final boolean entireZone;
+    private final Sink sink;
+    private final CompletableFuture<Void> done;
+    /**
+     * Original blocks changed before they were captured, by section order and then storage index in the section.
+     */
+    private final Map<Integer, Map<Integer, WarBlock>> originals;
+    private int next;
+    private BlockVolume section;
+    private int index;
+
+    /**
+     * Start capturing part of a warzone.
+     *
+     * @param plugin War plugin, to read blocks from the world.
+     * @param cuboid entire zone area, which sections are relative to.
+     * @param region part of the zone to capture.
+     * @param sink   destination of captured sections.
+     */
+    ZoneCapture(ServerAPI plugin, WarCuboid cuboid, WarCuboid region, Sink sink) {
+        this.plugin = plugin;
+        this.world = cuboid.getWorld();
+        this.originX = cuboid.getMinX();
+        this.originY = cuboid.getMinY();
+        this.originZ = cuboid.getMinZ();
+        this.sizeX = cuboid.getMaxX() - originX + 1;
+        this.sizeY = cuboid.getMaxY() - originY + 1;
+        this.sizeZ = cuboid.getMaxZ() - originZ + 1;
+        int[] range = ZoneStorage.sectionRange(region, originX, originY, originZ);
+        this.minSx = Math.max(0, range[0]);
+        this.minSy = Math.max(0, range[1]);
+        this.minSz = Math.max(0, range[2]);
+        this.countSx = Math.max(0, Math.min((sizeX - 1) / SECTION_SIZE, range[3]) - minSx + 1);
+        this.countSy = Math.max(0, Math.min((sizeY - 1) / SECTION_SIZE, range[4]) - minSy + 1);
+        this.countSz = Math.max(0, Math.min((sizeZ - 1) / SECTION_SIZE, range[5]) - minSz + 1);
+        this.entireZone = region.getMinX() <= cuboid.getMinX() && region.getMinY() <= cuboid.getMinY()
+                && region.getMinZ() <= cuboid.getMinZ() && region.getMaxX() >= cuboid.getMaxX()
+                && region.getMaxY() >= cuboid.getMaxY() && region.getMaxZ() >= cuboid.getMaxZ();
+        this.sink = sink;
+        this.done = new CompletableFuture<>();
+        this.originals = new HashMap<>();
+        this.next = 0;
+    }
+
+    /**
+     * Get the future completed once every section is written, on the thread that wrote them.
+     *
+     * @return completion of the save.
+     */
+    CompletableFuture<Void> getFuture() {
+        return done;
+    }
+
+    /**
+     * Check if all sections have been captured, after which block changes no longer matter.
+     *
+     * @return true if capturing is finished.
+     */
+    boolean isCaptured() {
+        return next >= countSx * countSy * countSz;
+    }
+
+    /**
+     * Record a block that is about to change, if it has not been captured yet.
+     *
+     * @param x        block position in X dimension.
+     * @param y        block position in Y dimension.
+     * @param z        block position in Z dimension.
+     * @param original supplier of the block state before the change.
+     */
+    void record(int x, int y, int z, Supplier<WarBlock> original) {
+        int rx = x - originX, ry = y - originY, rz = z - originZ;
+        if (rx < 0 || ry < 0 || rz < 0 || rx >= sizeX || ry >= sizeY || rz >= sizeZ) {
+            return;
+        }
+        int sx = rx / SECTION_SIZE - minSx, sy = ry / SECTION_SIZE - minSy, sz = rz / SECTION_SIZE - minSz;
+        if (sx < 0 || sy < 0 || sz < 0 || sx >= countSx || sy >= countSy || sz >= countSz) {
+            return;
+        }
+        // sections in the same column share chunks, so they are captured together
+        int order = (sx * countSz + sz) * countSy + sy;
+        int fromX = (minSx + sx) * SECTION_SIZE, fromY = (minSy + sy) * SECTION_SIZE, fromZ = (minSz + sz) * SECTION_SIZE;
+        int local = ((ry - fromY) * Math.min(SECTION_SIZE, sizeZ - fromZ) + (rz - fromZ))
+                * Math.min(SECTION_SIZE, sizeX - fromX) + (rx - fromX);
+        if (order < next || order == next && section != null && local < index) {
+            return; // already captured
+        }
+        originals.computeIfAbsent(order, o -> new HashMap<>()).computeIfAbsent(local, i -> original.get());
+    }
+
+    @Override
+    public boolean step() {
+        if (isCaptured()) {
+            finish();
+            return false;
+        }
+        int sy = next % countSy, sz = next / countSy % countSz, sx = next / countSy / countSz;
+        int fromX = (minSx + sx) * SECTION_SIZE, fromY = (minSy + sy) * SECTION_SIZE, fromZ = (minSz + sz) * SECTION_SIZE;
+        if (section == null) {
+            section = new BlockVolume(Math.min(SECTION_SIZE, sizeX - fromX),
+                    Math.min(SECTION_SIZE, sizeY - fromY), Math.min(SECTION_SIZE, sizeZ - fromZ));
+            index = 0;
+        }
+        int lengthX = section.getSizeX(), lengthZ = section.getSizeZ();
+        int end = Math.min(index + ResetScheduler.BLOCKS_PER_STEP, section.getVolume());
+        for (; index < end; index++) {
+            int x = index % lengthX, z = index / lengthX % lengthZ, y = index / lengthX / lengthZ;
+            section.set(x, y, z, plugin.getBlock(world, originX + fromX + x, originY + fromY + y, originZ + fromZ + z, false));
+        }
+        if (index == section.getVolume()) {
+            Map<Integer, WarBlock> changed = originals.remove(next);
+            if (changed != null) {
+                for (Map.Entry<Integer, WarBlock> entry : changed.entrySet()) {
+                    int i = entry.getKey();
+                    section.set(i % lengthX, i / lengthX / lengthZ, i / lengthX % lengthZ, entry.getValue());
+                }
+            }
+            sink.write(minSx + sx, minSy + sy, minSz + sz, section);
+            section = null;
+            next++;
+        }
+        return true;
+    }
+
+    private void finish() {
+        if (done.isDone()) {
+            return; // cancelled
+        }
+        int maxSx = (sizeX - 1) / SECTION_SIZE, maxSy = (sizeY - 1) / SECTION_SIZE, maxSz = (sizeZ - 1) / SECTION_SIZE;
+        sink.finish(entireZone, maxSx, maxSy, maxSz).whenComplete((result, error) -> {
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else {
+                done.complete(null);
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        if (isCaptured() || done.isDone()) {
+            return; // already finishing
+        }
+        sink.discard();
+        done.completeExceptionally(new IllegalStateException("Save cancelled."));
+    }
+
+    @Override
+    public boolean isReset() {
+        return false;
+    }
+
+    /**
+     * Destination of captured sections. Called only from the server thread.
+     */
+    interface Sink {
+        /**
+         * Queue a captured section to be encoded. The section is no longer changed by the capture.
+         */
+        void write(int sx, int sy, int sz, BlockVolume section);
+
+        /**
+         * Write all queued sections together, first removing sections outside the zone if it was saved entirely.
+         *
+         * @return future completed once the sections are written.
+         */
+        CompletableFuture<Void> finish(boolean entireZone, int maxSx, int maxSy, int maxSz);
+
+        /**
+         * Drop all queued sections without writing them.
+         */
+        void discard();
+    }
+}
@@ -1,50 +1,92 @@
 package com.tommytony.war.zone;
 
 import java.sql.*;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * The zone configuration settings database.
+ * <p>
+ * The values set at this level are read from the database once, when the config is created, and kept in memory.
+ * Settings are resolved through the parent chain from memory and held indexed by setting ordinal. Changes are applied
+ * in memory, queued to be written to the database, and discard the resolved settings of all levels below it, so
+ * settings are never read back from the database.
  */
 public class ZoneConfig {
     /**
-     * Database configuration descriptor.
+     * Compiled statements for the database connection, for reads.
      */
-    private final Connection conn;
+    private final StatementCache statements;
+    /**
+     * Writer for the same database.
+     */
+    private final StorageWriter writer;
     /**
      * Table of values to manage. May be a table in a zone database or the main war database.
      */
     private final String table;
+    private final String selectSql, insertSql, updateSql, loadSql;
     /**
      * Root zone config, for fallback. Null if this is the war main settings.
      */
     private final ZoneConfig parent;
+    /**
+     * Configs that fall back to this one, and must be invalidated when it changes.
+     */
+    private final Set<ZoneConfig> children;
+    /**
+     * Values set at this level, which override the parent. Guarded by itself.
+     */
+    private final Map<ZoneSetting, Object> overrides;
+    /**
+     * Resolved settings for this level, or null if they need to be reloaded.
+     */
+    private volatile Snapshot snapshot;
 
     /**
      * Manages a zone configuration section.
      *
-     * @param database Active database to use.
+     * @param database Statement cache of the active database to use.
+     * @param writer   Writer for the active database.
      * @param table    Table name to use in database. Created if it does not exist. Needs to be trusted input.
      * @param parent   Parent zone config, for fallback. Could be zone config for a team or war global for zones.
      * @throws SQLException if there is an error creating or updating tables.
      */
-    public ZoneConfig(Connection database, String table, ZoneConfig parent) throws SQLException {
-        this.conn = database;
+    public ZoneConfig(StatementCache database, StorageWriter writer, String table, ZoneConfig parent) throws SQLException {
+        this.statements = database;
+        this.writer = writer;
         this.table = table;
+        this.selectSql = String.format("SELECT value FROM %s WHERE option = ?", table);
+        this.insertSql = String.format("INSERT INTO %s (value, option) VALUES (?, ?)", table);
+        this.updateSql = String.format("UPDATE %s SET value = ? WHERE option = ?", table);
+        this.loadSql = String.format("SELECT option, value FROM %s", table);
         this.parent = parent;
-        try (Statement stmt = conn.createStatement()) {
+        this.children = Collections.newSetFromMap(new WeakHashMap<>());
+        this.overrides = new EnumMap<>(ZoneSetting.class);
+        try (Statement stmt = statements.getConnection().createStatement()) {
             stmt.executeUpdate(String.format("CREATE TABLE IF NOT EXISTS %s (option TEXT, value BLOB)", table));
         }
+        loadOverrides();
+        if (parent != null) {
+            synchronized (parent.children) {
+                parent.children.add(this);
+            }
+        }
     }
 
     /**
      * Manages a zone configuration section.
      *
-     * @param database Active database to use.
+     * @param database Statement cache of the active database to use.
+     * @param writer   Writer for the active database.
      * @param table    Table name to use in database. Created if it does not exist. Needs to be trusted input.
      * @throws SQLException if there is an error creating or updating tables.
      */
-    public ZoneConfig(Connection database, String table) throws SQLException {
-        this(database, table, null);
+    public ZoneConfig(StatementCache database, StorageWriter writer, String table) throws SQLException {
+        this(database, writer, table, null);
     }
 
     /**
@@ -54,23 +96,7 @@ public class ZoneConfig {
      * @return the value of the setting or the default if not found.
      */
     public int getInt(ZoneSetting setting) {
-        try (PreparedStatement stmt = conn.prepareStatement(String.format("SELECT value FROM %s WHERE option = ?", table))) {
-            stmt.setString(1, setting.name());
-            try (ResultSet result = stmt.executeQuery()) {
-                if (result.next()) {
-                    // found an override for this config level
-                    return result.getInt(1);
-                } else if (parent != null) {
-                    // look for it in zone/global configs; will be recursive upwards
-                    return parent.getInt(setting);
-                } else {
-                    // the hard-coded value for fallback
-                    return (Integer) setting.getDefaultValue();
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return getSnapshot().ints[setting.ordinal()];
     }
 
     /**
@@ -79,26 +105,22 @@ public class ZoneConfig {
      * @param value New value to add or replace.
      */
     public void setInt(ZoneSetting setting, int value) {
-        boolean exists;
-        String sql = "INSERT INTO %s (value, option) VALUES (?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(String.format("SELECT value FROM %s WHERE option = ?", table))) {
-            stmt.setString(1, setting.name());
-            try (ResultSet result = stmt.executeQuery()) {
-                exists = result.next();
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (exists) {
-            sql = "UPDATE %s SET value = ? WHERE option = ?";
-        }
-        try (PreparedStatement stmt = conn.prepareStatement(String.format(sql, table))) {
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare(exists(database, setting) ? updateSql : insertSql);
             stmt.setInt(1, value);
             stmt.setString(2, setting.name());
             stmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        });
+        synchronized (overrides) {
+            overrides.put(setting, value);
+        }
+        Snapshot current = snapshot;
+        if (current != null) {
+            Snapshot changed = current.copy();
+            changed.ints[setting.ordinal()] = value;
+            snapshot = changed;
         }
+        invalidateChildren();
     }
 
     /**
@@ -108,23 +130,7 @@ public class ZoneConfig {
      * @return value of setting or the default if not found.
      */
     public boolean getBoolean(ZoneSetting setting) {
-        try (PreparedStatement stmt = conn.prepareStatement(String.format("SELECT value FROM %s WHERE option = ?", table))) {
-            stmt.setString(1, setting.name());
-            try (ResultSet result = stmt.executeQuery()) {
-                if (result.next()) {
-                    // found an override for this config level
-                    return Boolean.parseBoolean(result.getString(1));
-                } else if (parent != null) {
-                    // look for it in zone/global configs; will be recursive upwards
-                    return parent.getBoolean(setting);
-                } else {
-                    // the hard-coded value for fallback
-                    return (Boolean) setting.getDefaultValue();
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return getSnapshot().booleans[setting.ordinal()];
     }
 
     /**
@@ -133,26 +139,22 @@ public class ZoneConfig {
      * @param value New value to add or replace.
      */
     public void setBoolean(ZoneSetting setting, boolean value) {
-        boolean exists;
-        String sql = "INSERT INTO %s (value, option) VALUES (?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(String.format("SELECT value FROM %s WHERE option = ?", table))) {
-            stmt.setString(1, setting.name());
-            try (ResultSet result = stmt.executeQuery()) {
-                exists = result.next();
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        if (exists) {
-            sql = "UPDATE %s SET value = ? WHERE option = ?";
-        }
-        try (PreparedStatement stmt = conn.prepareStatement(String.format(sql, table))) {
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare(exists(database, setting) ? updateSql : insertSql);
             stmt.setString(1, Boolean.toString(value));
             stmt.setString(2, setting.name());
             stmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        });
+        synchronized (overrides) {
+            overrides.put(setting, value);
         }
+        Snapshot current = snapshot;
+        if (current != null) {
+            Snapshot changed = current.copy();
+            changed.booleans[setting.ordinal()] = value;
+            snapshot = changed;
+        }
+        invalidateChildren();
     }
 
     /**
@@ -183,4 +185,116 @@ public class ZoneConfig {
             setBoolean(setting, Boolean.parseBoolean(value));
         }
     }
+
+    private boolean exists(StatementCache database, ZoneSetting setting) throws SQLException {
+        PreparedStatement stmt = database.prepare(selectSql);
+        stmt.setString(1, setting.name());
+        try (ResultSet result = stmt.executeQuery()) {
+            return result.next();
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = load();
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Read all values set at this config level. Only called while the config is created, before it queues any writes,
+     * so the database is read without waiting for the writer.
+     *
+     * @throws SQLException
+     */
+    private void loadOverrides() throws SQLException {
+        try (ResultSet result = statements.prepare(loadSql).executeQuery()) {
+            while (result.next()) {
+                ZoneSetting setting;
+                try {
+                    setting = ZoneSetting.valueOf(result.getString(1));
+                } catch (IllegalArgumentException e) {
+                    continue; // setting from another version of War
+                }
+                if (setting.getDataType() == Integer.class) {
+                    overrides.put(setting, result.getInt(2));
+                } else if (setting.getDataType() == Boolean.class) {
+                    overrides.put(setting, Boolean.parseBoolean(result.getString(2)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve the overrides at this config level, falling back to the parent or the hard-coded default for the rest.
+     *
+     * @return resolved settings.
+     */
+    private Snapshot load() {
+        ZoneSetting[] settings = ZoneSetting.values();
+        Snapshot resolved;
+        if (parent != null) {
+            resolved = parent.getSnapshot().copy();
+        } else {
+            resolved = new Snapshot(settings.length);
+            for (ZoneSetting setting : settings) {
+                if (setting.getDataType() == Integer.class) {
+                    resolved.ints[setting.ordinal()] = (Integer) setting.getDefaultValue();
+                } else if (setting.getDataType() == Boolean.class) {
+                    resolved.booleans[setting.ordinal()] = (Boolean) setting.getDefaultValue();
+                }
+            }
+        }
+        synchronized (overrides) {
+            for (Map.Entry<ZoneSetting, Object> entry : overrides.entrySet()) {
+                if (entry.getKey().getDataType() == Integer.class) {
+                    resolved.ints[entry.getKey().ordinal()] = (Integer) entry.getValue();
+                } else if (entry.getKey().getDataType() == Boolean.class) {
+                    resolved.booleans[entry.getKey().ordinal()] = (Boolean) entry.getValue();
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Discard the resolved settings of this config level and every level that falls back to it. Levels below are
+     * discarded when this level changes.
+     */
+    private void invalidate() {
+        snapshot = null;
+        invalidateChildren();
+    }
+
+    private void invalidateChildren() {
+        ZoneConfig[] current;
+        synchronized (children) {
+            current = children.toArray(new ZoneConfig[children.size()]);
+        }
+        for (ZoneConfig child : current) {
+            child.invalidate();
+        }
+    }
+
+    /**
+     * Resolved values of all settings at a config level, indexed by setting ordinal. Not modified once published.
+     */
+    private static final class Snapshot {
+        private final int[] ints;
+        private final boolean[] booleans;
+
+        Snapshot(int size) {
+            ints = new int[size];
+            booleans = new boolean[size];
+        }
+
+        Snapshot copy() {
+            Snapshot copy = new Snapshot(ints.length);
+            System.arraycopy(ints, 0, copy.ints, 0, ints.length);
+            System.arraycopy(booleans, 0, copy.booleans, 0, booleans.length);
+            return copy;
+        }
+    }
 }
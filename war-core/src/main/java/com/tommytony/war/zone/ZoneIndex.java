@@ -0,0 +1,243 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarCuboid;
+import com.tommytony.war.struct.WarLocation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of warzone areas, for finding the zone at a location without checking every loaded zone. Each world
+ * has a grid of 16x16 chunk columns, mapping to the few zones which overlap that column.
+ * <p>
+ * Gates of all zones are indexed by world and block position, so finding the gate a player stepped on is a single
+ * lookup.
+ * <p>
+ * The index must be updated whenever a zone is loaded, moved, or removed, and whenever a gate changes.
+ */
+public class ZoneIndex {
+    private final Map<String, Map<Long, List<Entry>>> worlds;
+    private final Map<Warzone, Entry> entries;
+    private final Map<String, Integer> worldIds;
+    private final List<Map<Long, Gate>> gates;
+    private final Map<Warzone, List<Gate>> zoneGates;
+
+    public ZoneIndex() {
+        worlds = new HashMap<>();
+        entries = new HashMap<>();
+        worldIds = new HashMap<>();
+        gates = new ArrayList<>();
+        zoneGates = new HashMap<>();
+    }
+
+    /**
+     * Add a zone to the index, or move it if it was already indexed. Zones without an area are left out of the index.
+     *
+     * @param zone zone to index.
+     */
+    public void update(Warzone zone) {
+        remove(zone);
+        // gates are stored relative to the zone, so they move with it
+        updateGates(zone);
+        WarCuboid cuboid = zone.getCuboid();
+        if (cuboid == null) {
+            return;
+        }
+        Entry entry = new Entry(zone, cuboid);
+        entries.put(zone, entry);
+        Map<Long, List<Entry>> chunks = worlds.computeIfAbsent(cuboid.getWorld(), w -> new HashMap<>());
+        for (int chunkX = cuboid.getMinX() >> 4; chunkX <= cuboid.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = cuboid.getMinZ() >> 4; chunkZ <= cuboid.getMaxZ() >> 4; chunkZ++) {
+                chunks.computeIfAbsent(chunkKey(chunkX, chunkZ), k -> new ArrayList<>(1)).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Remove a zone from the index.
+     *
+     * @param zone zone to remove.
+     */
+    public void remove(Warzone zone) {
+        removeGates(zone);
+        Entry entry = entries.remove(zone);
+        if (entry == null) {
+            return;
+        }
+        WarCuboid cuboid = entry.cuboid;
+        Map<Long, List<Entry>> chunks = worlds.get(cuboid.getWorld());
+        for (int chunkX = cuboid.getMinX() >> 4; chunkX <= cuboid.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = cuboid.getMinZ() >> 4; chunkZ <= cuboid.getMaxZ() >> 4; chunkZ++) {
+                Long key = chunkKey(chunkX, chunkZ);
+                List<Entry> column = chunks.get(key);
+                column.remove(entry);
+                if (column.isEmpty()) {
+                    chunks.remove(key);
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            worlds.remove(cuboid.getWorld());
+        }
+    }
+
+    /**
+     * Find the zone containing a location.
+     *
+     * @param location location to check.
+     * @return zone containing the location, or null if the location is not inside any zone.
+     */
+    public Warzone getZone(WarLocation location) {
+        Map<Long, List<Entry>> chunks = worlds.get(location.getWorld());
+        if (chunks == null) {
+            return null;
+        }
+        List<Entry> column = chunks.get(chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        if (column == null) {
+            return null;
+        }
+        for (int i = 0; i < column.size(); i++) {
+            Entry entry = column.get(i);
+            if (entry.cuboid.contains(location)) {
+                return entry.zone;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the area of a zone as it was last indexed.
+     *
+     * @param zone indexed zone.
+     * @return cuboid region for zone, or null if the zone is not indexed.
+     */
+    public WarCuboid getCuboid(Warzone zone) {
+        Entry entry = entries.get(zone);
+        return entry == null ? null : entry.cuboid;
+    }
+
+    /**
+     * Re-index the gates of a zone after one was added, moved, or deleted.
+     *
+     * @param zone zone with changed gates.
+     */
+    public void updateGates(Warzone zone) {
+        removeGates(zone);
+        List<Gate> added = new ArrayList<>();
+        for (Map.Entry<WarLocation, String> entry : zone.getGates().entrySet()) {
+            WarLocation location = entry.getKey();
+            Gate gate = new Gate(zone, entry.getValue(), getWorldId(location.getWorld()),
+                    blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+            gates.get(gate.worldId).put(gate.key, gate);
+            added.add(gate);
+        }
+        if (!added.isEmpty()) {
+            zoneGates.put(zone, added);
+        }
+    }
+
+    private void removeGates(Warzone zone) {
+        List<Gate> removed = zoneGates.remove(zone);
+        if (removed == null) {
+            return;
+        }
+        for (Gate gate : removed) {
+            gates.get(gate.worldId).remove(gate.key, gate);
+        }
+    }
+
+    /**
+     * Find the gate a location is standing in.
+     *
+     * @param location location to check.
+     * @return gate at the block of the location, or null if there is none.
+     */
+    public Gate getGate(WarLocation location) {
+        Integer worldId = worldIds.get(location.getWorld());
+        if (worldId == null) {
+            return null;
+        }
+        return gates.get(worldId).get(blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    private int getWorldId(String world) {
+        Integer worldId = worldIds.get(world);
+        if (worldId == null) {
+            worldId = gates.size();
+            worldIds.put(world, worldId);
+            gates.add(new HashMap<>());
+        }
+        return worldId;
+    }
+
+    /**
+     * Pack the coordinates of a block into a single number. 26 bits are used for each of X and Z, enough for the
+     * 30 million block world border, and 12 bits for Y.
+     *
+     * @param x block position in X dimension.
+     * @param y block position in Y dimension.
+     * @param z block position in Z dimension.
+     * @return packed block position.
+     */
+    static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    static int blockX(long key) {
+        return (int) (key >> 38);
+    }
+
+    static int blockY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    static int blockZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static final class Entry {
+        private final Warzone zone;
+        private final WarCuboid cuboid;
+
+        Entry(Warzone zone, WarCuboid cuboid) {
+            this.zone = zone;
+            this.cuboid = cuboid;
+        }
+    }
+
+    /**
+     * Gate linking a location outside of a zone to a team or automatic assignment in that zone.
+     */
+    public static final class Gate {
+        private final Warzone zone;
+        private final String name;
+        private final int worldId;
+        private final long key;
+
+        Gate(Warzone zone, String name, int worldId, long key) {
+            this.zone = zone;
+            this.name = name;
+            this.worldId = worldId;
+            this.key = key;
+        }
+
+        public Warzone getZone() {
+            return zone;
+        }
+
+        /**
+         * Get the name of the gate.
+         *
+         * @return either a team name or 'autoassign'.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+}
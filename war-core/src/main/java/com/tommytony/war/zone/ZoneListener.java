@@ -1,11 +1,15 @@
 package com.tommytony.war.zone;
 
+import com.google.common.base.Suppliers;
 import com.tommytony.war.ServerAPI;
 import com.tommytony.war.WarPlayer;
+import com.tommytony.war.struct.WarBlock;
 import com.tommytony.war.struct.WarLocation;
 
 import java.text.MessageFormat;
 import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.function.Supplier;
 
 /**
  * Handles events that occur in relation to a particular zone.
@@ -25,6 +29,27 @@ public class ZoneListener {
         this.plugin = plugin;
     }
 
+    /**
+     * Record the original state of a block in the zone before it is changed, for the game in progress and for a save in
+     * progress.
+     *
+     * @param location location of the block.
+     * @param original supplier of the block state before the change.
+     * @return false, block changes are never cancelled.
+     */
+    public boolean handleBlockChange(WarLocation location, Supplier<WarBlock> original) {
+        Supplier<WarBlock> once = Suppliers.memoize(original::get)::get;
+        Optional<WarGame> game = warzone.getGame();
+        if (game.isPresent()) {
+            game.get().recordBlockChange(location, once);
+        }
+        ZoneCapture capture = warzone.getCapture();
+        if (capture != null && !capture.isCaptured()) {
+            capture.record(location.getBlockX(), location.getBlockY(), location.getBlockZ(), once);
+        }
+        return false;
+    }
+
     public boolean handlePlayerMovementInWarzone(WarPlayer player, WarLocation from, WarLocation to) {
         return false;
     }
@@ -79,14 +104,25 @@ public class ZoneListener {
             // send the death message for the most recent damage cause
             game.broadcast(cause.getDeathMessage());
             // find a recent attack from a player
-            Optional<WarGame.Attack> first = game.getAttacks().stream()
-                    .filter(a -> a.getDefender() == defender)
-                    .filter(a -> System.currentTimeMillis() - a.getTime() < LAST_ATTACK_DELAY_MS)
-                    .findFirst();
-            if (first.isPresent()) {
-                WarGame.Team beneficiary = game.getPlayerTeam(first.get().getAttacker());
-                beneficiary.addPoints(1);
-                game.broadcast(MessageFormat.format("Team {0} gains 1 point.", beneficiary.getName()));
+            AttackHistory attacks = game.getAttacks(defender);
+            if (attacks != null) {
+                long now = System.currentTimeMillis();
+                WarPlayer attacker = attacks.getLastAttacker(now, LAST_ATTACK_DELAY_MS);
+                WarGame.Team beneficiary = attacker != null ? game.getPlayerTeam(attacker) : null;
+                if (beneficiary != null) {
+                    beneficiary.addPoints(1);
+                    game.broadcast(MessageFormat.format("Team {0} gains 1 point.", beneficiary.getName()));
+                    StringJoiner assists = new StringJoiner(", ");
+                    for (WarPlayer assist : attacks.getAssists(now, LAST_ATTACK_DELAY_MS)) {
+                        if (game.isPlaying(assist)) {
+                            assists.add(assist.getDisplayName());
+                        }
+                    }
+                    if (assists.length() > 0) {
+                        game.broadcast(MessageFormat.format("Assisted by {0}.", assists.toString()));
+                    }
+                }
+                attacks.clear();
             }
             game.checkForEndRound();
             game.resetPlayerState(defender);
@@ -0,0 +1,133 @@
+package com.tommytony.war.zone;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.struct.WarCuboid;
+import com.tommytony.war.struct.WarLocation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of the named positions of a zone, in world coordinates. Kept up to date by {@link ZoneStorage} as
+ * positions are written, so questions about the zone area, teams, and gates can be answered without a query.
+ */
+class ZonePoints {
+    private static final String TEAM_SPAWN_PREFIX = "teamspawn";
+    private static final String GATE_PREFIX = "gate";
+    private final Map<String, WarLocation> positions;
+    private final Map<String, WarLocation> teamSpawns;
+    private final Map<WarLocation, String> gates;
+    private List<String> teams;
+    private WarCuboid cuboid;
+
+    ZonePoints() {
+        positions = new HashMap<>();
+        teamSpawns = new LinkedHashMap<>();
+        gates = new HashMap<>();
+        teams = ImmutableList.of();
+    }
+
+    /**
+     * Get a named position.
+     *
+     * @param name name of the position.
+     * @return location of the position, or null if it is not set.
+     */
+    WarLocation get(String name) {
+        return positions.get(name);
+    }
+
+    /**
+     * Add or replace a named position.
+     *
+     * @param name     name of the position.
+     * @param location location of the position, in world coordinates.
+     */
+    void put(String name, WarLocation location) {
+        remove(name);
+        positions.put(name, location);
+        if (name.startsWith(TEAM_SPAWN_PREFIX)) {
+            teamSpawns.put(name.substring(TEAM_SPAWN_PREFIX.length()), location);
+            teams = ImmutableList.copyOf(teamSpawns.keySet());
+        } else if (name.startsWith(GATE_PREFIX)) {
+            gates.put(location, name.substring(GATE_PREFIX.length()));
+        } else if (name.equals("position1") || name.equals("position2")) {
+            updateCuboid();
+        }
+    }
+
+    /**
+     * Remove a named position.
+     *
+     * @param name name of the position.
+     */
+    void remove(String name) {
+        WarLocation location = positions.remove(name);
+        if (location == null) {
+            return;
+        }
+        if (name.startsWith(TEAM_SPAWN_PREFIX)) {
+            teamSpawns.remove(name.substring(TEAM_SPAWN_PREFIX.length()));
+            teams = ImmutableList.copyOf(teamSpawns.keySet());
+        } else if (name.startsWith(GATE_PREFIX)) {
+            gates.remove(location);
+        } else if (name.equals("position1") || name.equals("position2")) {
+            updateCuboid();
+        }
+    }
+
+    /**
+     * Get all named positions.
+     *
+     * @return copy of the positions by name.
+     */
+    Map<String, WarLocation> getPositions() {
+        return new HashMap<>(positions);
+    }
+
+    /**
+     * Remove all positions.
+     */
+    void clear() {
+        positions.clear();
+        teamSpawns.clear();
+        gates.clear();
+        teams = ImmutableList.of();
+        cuboid = null;
+    }
+
+    private void updateCuboid() {
+        WarLocation position1 = positions.get("position1"), position2 = positions.get("position2");
+        cuboid = position1 != null && position2 != null ? new WarCuboid(position1, position2) : null;
+    }
+
+    /**
+     * Get the area of the zone.
+     *
+     * @return zone area, or null if either corner is not set.
+     */
+    WarCuboid getCuboid() {
+        return cuboid;
+    }
+
+    /**
+     * Get the names of teams with a spawn in the zone.
+     *
+     * @return team names, in the order the spawns were loaded or added.
+     */
+    List<String> getTeams() {
+        return teams;
+    }
+
+    /**
+     * Get the gates leading to the zone.
+     *
+     * @return read-only mapping of gate locations to gate names.
+     */
+    Map<WarLocation, String> getGates() {
+        return Collections.unmodifiableMap(gates);
+    }
+}
@@ -20,7 +20,21 @@ public enum ZoneSetting {
     /**
      * First team to this many points wins the round.
      */
-    MAXPOINTS(Integer.class, 10, true);
+    MAXPOINTS(Integer.class, 10, true),
+    /**
+     * Most blocks changed in a round that will be individually restored when the round ends. Rounds that change more
+     * blocks reset the whole zone instead.
+     */
+    JOURNALSIZE(Integer.class, 50000, false),
+    /**
+     * Start reading the saved zone from disk once a team is this many points from winning, if the round will end with
+     * a full reset.
+     */
+    PREFETCHPOINTS(Integer.class, 1, false),
+    /**
+     * Keep a copy of the saved blocks in a file next to the zone database, read through a memory map on reset.
+     */
+    MAPPEDBLOCKS(Boolean.class, true, false);
     private final Class<?> dataType;
     private final Object defaultValue;
     private final boolean perTeam;
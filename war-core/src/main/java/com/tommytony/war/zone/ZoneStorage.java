@@ -1,30 +1,74 @@
 package com.tommytony.war.zone;
 
+import com.tommytony.war.EditSession;
 import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarConfig;
 import com.tommytony.war.item.WarInventory;
 import com.tommytony.war.item.WarItem;
 import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarCuboid;
 import com.tommytony.war.struct.WarLocation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
 /**
  * Manages the war zone database file, which contains all the data for the war zone.
+ * <p>
+ * Blocks are stored in sections of 16x16x16 blocks, relative to position1. Each section is written with its own
+ * version and checksum, so any part of the zone can be loaded or saved without touching the rest. A copy of the
+ * sections may be kept in a {@link SectionFile} for faster loading.
+ * <p>
+ * The database is only queried by the {@link StorageWriter} once the zone is open. Positions, inventories and settings
+ * are kept in memory, so the server thread never waits for the writer. Sections are encoded and decoded, and the
+ * section file is read and written, on a separate codec thread, so they do not hold up other writes.
  */
 class ZoneStorage implements AutoCloseable {
-    private static int DATABASE_VERSION = 2;
+    static final int SECTION_SIZE = 16;
+    private static int DATABASE_VERSION = 5;
     private static int BATCH_SIZE = 10000;
+    private static final String WRITE_SECTION_SQL = "INSERT OR REPLACE INTO block_sections (sx, sy, sz, version, checksum, data) "
+            + "VALUES (?, ?, ?, COALESCE((SELECT version FROM block_sections WHERE sx = ? AND sy = ? AND sz = ?), 0) + 1, ?, ?)";
     private final Warzone zone;
     private final Connection connection;
+    private final StatementCache statements;
+    private final StorageWriter writer;
     private final File dataStore;
+    private final SectionFile sectionFile;
     private final ServerAPI plugin;
-    private final Map<String, WarLocation> positionCache;
+    private final ZonePoints points;
+    /**
+     * Saved inventories by name. Only used on the server thread.
+     */
+    private final Map<String, WarInventory> inventories;
+    /**
+     * Encodes and decodes sections, and owns the section file.
+     */
+    private final ExecutorService codec;
+    private Prefetch prefetch;
+    /**
+     * Count of changes to the saved blocks, so that blocks read before a change are not cached.
+     */
+    private int blocksVersion;
 
     /**
      * Initiates a database for a new or existing database.
@@ -37,15 +81,35 @@ class ZoneStorage implements AutoCloseable {
         this.zone = zone;
         this.plugin = plugin;
         dataStore = new File(plugin.getDataDir(), String.format("%s.warzone", zone.getName()));
+        sectionFile = new SectionFile(new File(plugin.getDataDir(), String.format("%s.blocks", zone.getName())));
         connection = DriverManager.getConnection("jdbc:sqlite:" + dataStore.getPath());
-        positionCache = new HashMap<>();
+        statements = new StatementCache(connection);
+        points = new ZonePoints();
+        inventories = new HashMap<>();
         this.upgradeDatabase();
+        this.loadPositions();
+        this.loadInventories();
+        writer = new StorageWriter(zone.getName(),
+                new StatementCache(DriverManager.getConnection("jdbc:sqlite:" + dataStore.getPath())), plugin::logInfo);
+        codec = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "War storage codec - " + zone.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     Connection getConnection() {
         return connection;
     }
 
+    StatementCache getStatements() {
+        return statements;
+    }
+
+    StorageWriter getWriter() {
+        return writer;
+    }
+
     File getDataStore() {
         return dataStore;
     }
@@ -69,7 +133,10 @@ class ZoneStorage implements AutoCloseable {
             // upgrade
             switch (version) {
                 case 0:
-                    // brand new database file
+                    // brand new database file, so a section file left by a deleted zone of the same name is stale
+                    if (sectionFile.getFile().exists() && !sectionFile.getFile().delete()) {
+                        throw new IllegalStateException("Failed to delete old section file " + sectionFile.getFile().getPath());
+                    }
                     stmt.executeUpdate("CREATE TABLE coordinates (name TEXT UNIQUE, x NUMERIC, y NUMERIC, z NUMERIC, pitch NUMERIC, yaw NUMERIC, world TEXT)");
                     stmt.executeUpdate("CREATE TABLE block_ids (id INTEGER, name TEXT)");
                     stmt.executeUpdate("CREATE TABLE blocks (x NUMERIC, y NUMERIC, z NUMERIC, id INTEGER, meta INTEGER, data BLOB)");
@@ -78,6 +145,25 @@ class ZoneStorage implements AutoCloseable {
                     stmt.executeUpdate("CREATE TABLE inv_labels (id INTEGER PRIMARY KEY, label TEXT UNIQUE)");
                     stmt.executeUpdate("CREATE TABLE inventories (inv_id INTEGER, item_id INTEGER, name TEXT, data TEXT, size INTEGER)");
                     stmt.executeUpdate("PRAGMA user_version = 2");
+                case 2:
+                    stmt.executeUpdate("CREATE TABLE block_palette (id INTEGER PRIMARY KEY, name TEXT, meta INTEGER)");
+                    stmt.executeUpdate("CREATE TABLE block_volume (size_x INTEGER, size_y INTEGER, size_z INTEGER, blocks BLOB)");
+                    stmt.executeUpdate("CREATE TABLE block_data (idx INTEGER PRIMARY KEY, data TEXT)");
+                    migrateBlockRows(connection);
+                    stmt.executeUpdate("DROP TABLE blocks");
+                    stmt.executeUpdate("DROP TABLE block_ids");
+                    stmt.executeUpdate("PRAGMA user_version = 3");
+                case 3:
+                    stmt.executeUpdate("CREATE TABLE block_sections (sx INTEGER, sy INTEGER, sz INTEGER, version INTEGER, checksum INTEGER, data BLOB, PRIMARY KEY (sx, sy, sz))");
+                    migrateBlockVolume();
+                    stmt.executeUpdate("DROP TABLE block_volume");
+                    stmt.executeUpdate("DROP TABLE block_palette");
+                    stmt.executeUpdate("DROP TABLE block_data");
+                    stmt.executeUpdate("PRAGMA user_version = 4");
+                case 4:
+                    stmt.executeUpdate("CREATE TABLE block_revision (revision INTEGER)");
+                    stmt.executeUpdate("INSERT INTO block_revision (revision) VALUES (0)");
+                    stmt.executeUpdate("PRAGMA user_version = 5");
                     break;
                 default:
                     // some odd bug or people messing with their database
@@ -114,32 +200,48 @@ class ZoneStorage implements AutoCloseable {
     }
 
     /**
-     * Look up a position in the coordinates table.
+     * Read all positions from the coordinates table into memory, replacing any already loaded.
      *
-     * @param name  Name of stored position.
-     * @return the location of the position, or absent if not found.
      * @throws SQLException
      */
-    WarLocation getPosition(String name) throws SQLException {
-        if (positionCache.containsKey(name)) {
-            return positionCache.get(name);
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT x, y, z, pitch, yaw, world FROM coordinates WHERE name = ?")) {
-            stmt.setString(1, name);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    WarLocation warLocation = new WarLocation(resultSet.getDouble("x"), resultSet.getDouble("y"), resultSet.getDouble("z"),
-                            resultSet.getString("world"), resultSet.getDouble("pitch"), resultSet.getDouble("yaw"));
-                    if (!name.equals("position1")) {
-                        warLocation = dbToWorld(warLocation);
-                    }
-                    positionCache.put(name, warLocation);
-                    return warLocation;
-                }
+    private void loadPositions() throws SQLException {
+        Map<String, WarLocation> stored = new HashMap<>();
+        PreparedStatement stmt = statements.prepare("SELECT x, y, z, pitch, yaw, world, name FROM coordinates");
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            while (resultSet.next()) {
+                stored.put(resultSet.getString("name"), new WarLocation(resultSet.getDouble("x"),
+                        resultSet.getDouble("y"), resultSet.getDouble("z"), resultSet.getString("world"),
+                        resultSet.getDouble("pitch"), resultSet.getDouble("yaw")));
             }
         }
-        return null;
+        points.clear();
+        WarLocation position1 = stored.remove("position1");
+        if (position1 == null) {
+            return; // other positions are relative to position1, and cannot exist without it
+        }
+        points.put("position1", position1);
+        for (Map.Entry<String, WarLocation> entry : stored.entrySet()) {
+            points.put(entry.getKey(), position1.add(entry.getValue()));
+        }
+    }
+
+    /**
+     * Get the in-memory model of all positions in the zone.
+     *
+     * @return zone positions.
+     */
+    ZonePoints getPoints() {
+        return points;
+    }
+
+    /**
+     * Look up a position in the zone.
+     *
+     * @param name  Name of stored position.
+     * @return the location of the position, or null if not found.
+     */
+    WarLocation getPosition(String name) {
+        return points.get(name);
     }
 
     /**
@@ -147,59 +249,27 @@ class ZoneStorage implements AutoCloseable {
      *
      * @param name position to check.
      * @return true if the database contains this position.
-     * @throws SQLException
      */
-    boolean hasPosition(String name) throws SQLException {
+    boolean hasPosition(String name) {
         return getPosition(name) != null;
     }
 
     /**
-     * Gets a list of teams based on values in the positions database.
+     * Gets a list of teams based on the team spawn positions.
      *
      * @return list of teams
-     * @throws SQLException
      */
-    List<String> getTeams() throws SQLException {
-        List<String> teams = new ArrayList<>();
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT name FROM coordinates")) {
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                while (resultSet.next()) {
-                    String name = resultSet.getString("name");
-                    if (name.startsWith("teamspawn")) {
-                        teams.add(name.substring(9));
-                    }
-                }
-            }
-        }
-        return teams;
+    List<String> getTeams() {
+        return points.getTeams();
     }
 
     /**
      * Get a list of gates to this warzone and their locations.
      *
      * @return gate names and locations
-     * @throws SQLException
      */
-    Map<WarLocation, String> getGates() throws SQLException {
-        Map<WarLocation, String> gates = new HashMap<>();
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT x, y, z, pitch, yaw, world, name FROM coordinates")) {
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                while (resultSet.next()) {
-                    String name = resultSet.getString("name");
-                    WarLocation warLocation = new WarLocation(resultSet.getDouble("x"), resultSet.getDouble("y"), resultSet.getDouble("z"),
-                            resultSet.getString("world"), resultSet.getDouble("pitch"), resultSet.getDouble("yaw"));
-                    if (!name.equals("position1")) {
-                        warLocation = dbToWorld(warLocation);
-                    }
-                    if (name.startsWith("gate")) {
-                        gates.put(warLocation, name.substring(4));
-                    }
-                }
-            }
-        }
-        return gates;
+    Map<WarLocation, String> getGates() {
+        return points.getGates();
     }
 
     /**
@@ -210,26 +280,37 @@ class ZoneStorage implements AutoCloseable {
      * @throws SQLException
      */
     void setPosition(String name, WarLocation location) throws SQLException {
-        String sql;
-        if (this.hasPosition(name)) {
-            sql = "UPDATE coordinates SET x = ?, y = ?, z = ?, world = ?, pitch = ?, yaw = ? WHERE name = ?";
-        } else {
-            sql = "INSERT INTO coordinates (x, y, z, world, pitch, yaw, name) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        }
-        if (!name.equals("position1")) {
-            location = worldToDb(location);
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDouble(1, location.getX());
-            stmt.setDouble(2, location.getY());
-            stmt.setDouble(3, location.getZ());
-            stmt.setString(4, location.getWorld());
-            stmt.setDouble(5, location.getPitch());
-            stmt.setDouble(6, location.getYaw());
+        String sql = this.hasPosition(name)
+                ? "UPDATE coordinates SET x = ?, y = ?, z = ?, world = ?, pitch = ?, yaw = ? WHERE name = ?"
+                : "INSERT INTO coordinates (x, y, z, world, pitch, yaw, name) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        WarLocation stored = name.equals("position1") ? location : worldToDb(location);
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare(sql);
+            stmt.setDouble(1, stored.getX());
+            stmt.setDouble(2, stored.getY());
+            stmt.setDouble(3, stored.getZ());
+            stmt.setString(4, stored.getWorld());
+            stmt.setDouble(5, stored.getPitch());
+            stmt.setDouble(6, stored.getYaw());
             stmt.setString(7, name);
             stmt.executeUpdate();
+        });
+        if (name.equals("position1")) {
+            // all other positions are stored relative to position1, so they move with it
+            invalidateBlocks();
+            WarLocation previous = this.getPosition("position1");
+            Map<String, WarLocation> moved = points.getPositions();
+            moved.remove("position1");
+            points.clear();
+            points.put("position1", location);
+            if (previous != null) {
+                for (Map.Entry<String, WarLocation> entry : moved.entrySet()) {
+                    points.put(entry.getKey(), location.add(entry.getValue().sub(previous)));
+                }
+            }
+        } else {
+            points.put(name, location);
         }
-        positionCache.clear();
     }
 
     /**
@@ -239,209 +320,892 @@ class ZoneStorage implements AutoCloseable {
      * @throws SQLException
      */
     void deletePosition(String name) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM coordinates WHERE name = ?")) {
+        writer.submit(database -> {
+            PreparedStatement stmt = database.prepare("DELETE FROM coordinates WHERE name = ?");
             stmt.setString(1, name);
             stmt.executeUpdate();
-        }
+        });
+        points.remove(name);
     }
 
     /**
-     * Load all blocks from the database into the world.
-     * @throws SQLException
+     * Convert blocks saved one row per block, by versions before 3, to a block volume. Rows are offsets from
+     * position1, which may be any corner of the zone, so the volume starts at the lowest row and position1 is moved to
+     * the block that row was saved from. Other positions are rebased to stay where they are, and position2 takes the
+     * place of position1 on any axis where position1 was the upper corner, so the zone area is kept.
+     *
+     * @param connection database being upgraded.
+     * @throws SQLException if any row can't be converted. Nothing is changed.
      */
-    void loadBlocks() throws SQLException {
+    static void migrateBlockRows(Connection connection) throws SQLException {
         Map<Integer, String> blockIds = new HashMap<>();
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT id, name FROM block_ids"
-        )) {
-            try (ResultSet result = stmt.executeQuery()) {
+        Map<String, WarLocation> positions = new HashMap<>();
+        int minX, minY, minZ, sizeX, sizeY, sizeZ;
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet result = stmt.executeQuery("SELECT MIN(x), MIN(y), MIN(z), MAX(x), MAX(y), MAX(z), COUNT(*) FROM blocks")) {
+                if (!result.next() || result.getInt(7) == 0) {
+                    return; // zone was never saved
+                }
+                minX = result.getInt(1);
+                minY = result.getInt(2);
+                minZ = result.getInt(3);
+                sizeX = result.getInt(4) - minX + 1;
+                sizeY = result.getInt(5) - minY + 1;
+                sizeZ = result.getInt(6) - minZ + 1;
+            }
+            try (ResultSet result = stmt.executeQuery("SELECT id, name FROM block_ids")) {
                 while (result.next()) {
                     blockIds.put(result.getInt("id"), result.getString("name"));
                 }
             }
-        } catch (SQLException e) {
-            throw new SQLException("Exception fired while loading block IDs", e);
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT x, y, z, id, meta, data FROM blocks"
-        )) {
-            try (ResultSet result = stmt.executeQuery()) {
+            try (ResultSet result = stmt.executeQuery("SELECT x, y, z, pitch, yaw, world, name FROM coordinates")) {
+                while (result.next()) {
+                    positions.put(result.getString("name"), new WarLocation(result.getDouble("x"),
+                            result.getDouble("y"), result.getDouble("z"), result.getString("world"),
+                            result.getDouble("pitch"), result.getDouble("yaw")));
+                }
+            }
+            WarLocation position1 = positions.remove("position1");
+            if (position1 == null) {
+                throw new SQLException("Saved blocks have no position1 to be placed relative to.");
+            }
+            BlockVolume volume = new BlockVolume(sizeX, sizeY, sizeZ);
+            try (ResultSet result = stmt.executeQuery("SELECT x, y, z, id, meta, data FROM blocks")) {
                 while (result.next()) {
-                    String name = blockIds.get(result.getInt("id"));
-                    String serialized = result.getString("data");
-                    WarLocation loc = new WarLocation(result.getInt("x"), result.getInt("y"), result.getInt("z"),
-                            this.getPosition("position1").getWorld());
-                    loc = dbToWorld(loc);
-                    short meta = result.getShort("meta");
-                    WarBlock block = new WarBlock(name, null, serialized, meta);
-                    plugin.setBlock(loc, block);
+                    int x = result.getInt("x"), y = result.getInt("y"), z = result.getInt("z");
+                    int id = result.getInt("id");
+                    String name = result.wasNull() ? null : blockIds.get(id);
+                    if (name == null) {
+                        throw new SQLException(String.format("Unknown block id at %d, %d, %d.", x, y, z));
+                    }
+                    volume.set(x - minX, y - minY, z - minZ, new WarBlock(name, null, result.getString("data"),
+                            result.getShort("meta")));
+                }
+            }
+            // rows were saved as floor(block - position1), so the lowest row came from ceil(position1 + row)
+            WarLocation origin = new WarLocation(Math.ceil(position1.getX() + minX), Math.ceil(position1.getY() + minY),
+                    Math.ceil(position1.getZ() + minZ), position1.getWorld(), position1.getPitch(), position1.getYaw());
+            WarLocation position2 = positions.get("position2");
+            if (position2 != null) {
+                WarLocation corner = position1.add(position2);
+                positions.put("position2", new WarLocation(Math.max(position1.getX(), corner.getX()),
+                        Math.max(position1.getY(), corner.getY()), Math.max(position1.getZ(), corner.getZ()),
+                        corner.getWorld()).sub(position1));
+            }
+            connection.setAutoCommit(false);
+            try {
+                writeVolume(connection, volume);
+                try (PreparedStatement update = connection.prepareStatement("UPDATE coordinates SET x = ?, y = ?, z = ? WHERE name = ?")) {
+                    setCoordinates(update, "position1", origin.getX(), origin.getY(), origin.getZ());
+                    for (Map.Entry<String, WarLocation> entry : positions.entrySet()) {
+                        WarLocation relative = entry.getValue();
+                        setCoordinates(update, entry.getKey(), relative.getX() + position1.getX() - origin.getX(),
+                                relative.getY() + position1.getY() - origin.getY(),
+                                relative.getZ() + position1.getZ() - origin.getZ());
+                    }
+                    update.executeBatch();
                 }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            throw new SQLException("Exception fired while loading block data.", e);
+            throw new SQLException("Failed to convert zone blocks to the current format.", e);
         }
     }
 
+    private static void setCoordinates(PreparedStatement stmt, String name, double x, double y, double z) throws SQLException {
+        stmt.setDouble(1, x);
+        stmt.setDouble(2, y);
+        stmt.setDouble(3, z);
+        stmt.setString(4, name);
+        stmt.addBatch();
+    }
+
     /**
-     * Save blocks in the world to the database.
+     * Split the single block volume, saved by version 3, into sections.
+     *
      * @throws SQLException
      */
-    void saveBlocks() throws SQLException {
-        long startTime = System.currentTimeMillis();
+    private void migrateBlockVolume() throws SQLException {
+        try {
+            BlockVolume volume = readVolume();
+            if (volume == null) {
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                for (int sx = 0; sx * SECTION_SIZE < volume.getSizeX(); sx++) {
+                    for (int sy = 0; sy * SECTION_SIZE < volume.getSizeY(); sy++) {
+                        for (int sz = 0; sz * SECTION_SIZE < volume.getSizeZ(); sz++) {
+                            int x = sx * SECTION_SIZE, y = sy * SECTION_SIZE, z = sz * SECTION_SIZE;
+                            writeSection(sx, sy, sz, volume.copy(x, y, z,
+                                    Math.min(SECTION_SIZE, volume.getSizeX() - x),
+                                    Math.min(SECTION_SIZE, volume.getSizeY() - y),
+                                    Math.min(SECTION_SIZE, volume.getSizeZ() - z)));
+                        }
+                    }
+                }
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | IllegalStateException e) {
+            throw new SQLException("Failed to convert zone blocks to the current format.", e);
+        }
+    }
+
+    /**
+     * Read the single block volume saved by version 3.
+     *
+     * @return saved blocks, or null if the zone has not been saved.
+     * @throws SQLException
+     */
+    private BlockVolume readVolume() throws SQLException {
+        BlockVolume volume;
+        byte[] blocks;
         try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate("DELETE FROM block_ids");
-            stmt.executeUpdate("DELETE FROM blocks");
-        } catch (SQLException e) {
-            throw new SQLException("Failed to delete old warzone data from the database.", e);
-        }
-        Map<String, Integer> blockIds = new HashMap<>();
-        int i = 0, changed = 0;
-        connection.setAutoCommit(false);
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO blocks (x, y, z, id, meta, data) VALUES (?, ?, ?, ?, ?, ?)"
-        )) {
-            for (WarLocation loc : zone.getCuboid()) {
-                WarBlock block = plugin.getBlock(loc, false);
-                if (!blockIds.containsKey(block.getBlockName())) {
-                    blockIds.put(block.getBlockName(), i++);
+            try (ResultSet result = stmt.executeQuery("SELECT size_x, size_y, size_z, blocks FROM block_volume")) {
+                if (!result.next()) {
+                    return null;
                 }
-                stmt.setInt(1, worldToDb(loc).getBlockX());
-                stmt.setInt(2, worldToDb(loc).getBlockY());
-                stmt.setInt(3, worldToDb(loc).getBlockZ());
-                stmt.setInt(4, blockIds.get(block.getBlockName()));
-                stmt.setShort(5, block.getMeta());
-                stmt.setString(6, block.getSerialized());
-                stmt.addBatch();
-                if (++changed % BATCH_SIZE == 0) {
-                    stmt.executeBatch();
-                    if ((System.currentTimeMillis() - startTime) >= 5000L) {
-                        String seconds = new DecimalFormat("#0.00").format((double) (System.currentTimeMillis() - startTime) / 1000.0D);
-                        plugin.logInfo("Still saving zone " + zone.getName() + ", " + seconds + " seconds elapsed.");
+                volume = new BlockVolume(result.getInt("size_x"), result.getInt("size_y"), result.getInt("size_z"));
+                blocks = result.getBytes("blocks");
+            }
+            try (ResultSet result = stmt.executeQuery("SELECT id, name, meta FROM block_palette ORDER BY id")) {
+                while (result.next()) {
+                    if (volume.addPalette(result.getString("name"), result.getShort("meta")) != result.getInt("id")) {
+                        throw new SQLException("Block palette is not contiguous.");
                     }
                 }
             }
+            volume.decode(blocks);
+            try (ResultSet result = stmt.executeQuery("SELECT idx, data FROM block_data")) {
+                while (result.next()) {
+                    volume.setSerialized(result.getInt("idx"), result.getString("data"));
+                }
+            }
+        }
+        return volume;
+    }
+
+    /**
+     * Replace the single block volume used by version 3. Must be called within a transaction.
+     *
+     * @param connection database to write to.
+     * @param volume     blocks to save.
+     * @throws SQLException
+     */
+    private static void writeVolume(Connection connection, BlockVolume volume) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM block_palette");
+            stmt.executeUpdate("DELETE FROM block_volume");
+            stmt.executeUpdate("DELETE FROM block_data");
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO block_palette (id, name, meta) VALUES (?, ?, ?)")) {
+            List<WarBlock> palette = volume.getPalette();
+            for (int i = 0; i < palette.size(); i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, palette.get(i).getBlockName());
+                stmt.setShort(3, palette.get(i).getMeta());
+                stmt.addBatch();
+            }
             stmt.executeBatch();
-        } catch (SQLException e) {
-            throw new SQLException("Failed to insert block information.", e);
-        }
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "INSERT INTO block_ids (id, name) VALUES (?, ?)"
-        )) {
-            for (Map.Entry<String, Integer> e : blockIds.entrySet()) {
-                stmt.setInt(1, e.getValue());
-                stmt.setString(2, e.getKey());
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO block_data (idx, data) VALUES (?, ?)")) {
+            int count = 0;
+            for (Map.Entry<Integer, String> entry : volume.getSerialized().entrySet()) {
+                stmt.setInt(1, entry.getKey());
+                stmt.setString(2, entry.getValue());
                 stmt.addBatch();
+                if (++count % BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
             }
             stmt.executeBatch();
-        } catch (SQLException e) {
-            throw new SQLException("Failed to insert block IDs.", e);
         }
-        connection.commit();
-        connection.setAutoCommit(true);
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO block_volume (size_x, size_y, size_z, blocks) VALUES (?, ?, ?, ?)")) {
+            stmt.setInt(1, volume.getSizeX());
+            stmt.setInt(2, volume.getSizeY());
+            stmt.setInt(3, volume.getSizeZ());
+            stmt.setBytes(4, volume.encode());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Write a section of blocks, replacing any previous copy and incrementing its version.
+     *
+     * @param sx      section position in X dimension, relative to position1.
+     * @param sy      section position in Y dimension, relative to position1.
+     * @param sz      section position in Z dimension, relative to position1.
+     * @param section blocks in the section.
+     * @throws SQLException
+     */
+    private void writeSection(int sx, int sy, int sz, BlockVolume section) throws SQLException {
+        writeSection(statements.prepare(WRITE_SECTION_SQL), sx, sy, sz, encodeSection(section));
+    }
+
+    private static byte[] encodeSection(BlockVolume section) throws SQLException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            section.writeTo(out);
+        } catch (IOException e) {
+            throw new SQLException("Failed to encode block section.", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeSection(PreparedStatement stmt, int sx, int sy, int sz, byte[] data) throws SQLException {
+        stmt.setInt(1, sx);
+        stmt.setInt(2, sy);
+        stmt.setInt(3, sz);
+        stmt.setInt(4, sx);
+        stmt.setInt(5, sy);
+        stmt.setInt(6, sz);
+        stmt.setLong(7, checksum(data));
+        stmt.setBytes(8, data);
+        stmt.executeUpdate();
+    }
+
+    private static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    /**
+     * Get the range of sections overlapping a region, relative to an origin. The range is not clipped to the zone.
+     *
+     * @param region region of the world.
+     * @param originX position1 in X dimension.
+     * @param originY position1 in Y dimension.
+     * @param originZ position1 in Z dimension.
+     * @return minimum and maximum section positions, in X, Y, Z order.
+     */
+    static int[] sectionRange(WarCuboid region, int originX, int originY, int originZ) {
+        return new int[]{
+                Math.floorDiv(region.getMinX() - originX, SECTION_SIZE),
+                Math.floorDiv(region.getMinY() - originY, SECTION_SIZE),
+                Math.floorDiv(region.getMinZ() - originZ, SECTION_SIZE),
+                Math.floorDiv(region.getMaxX() - originX, SECTION_SIZE),
+                Math.floorDiv(region.getMaxY() - originY, SECTION_SIZE),
+                Math.floorDiv(region.getMaxZ() - originZ, SECTION_SIZE)
+        };
+    }
+
+    /**
+     * Load all blocks from the database into the world.
+     * @throws SQLException
+     */
+    void loadBlocks() throws SQLException {
+        loadBlocks(zone.getCuboid());
+    }
+
+    /**
+     * Load every saved section overlapping a region into the world. Whole sections are restored, so blocks near the
+     * region may also be reset. Sections that fail their checksum are skipped. Waits for the sections to be read and
+     * decoded, unless they were already prefetched.
+     *
+     * @param region region of the world to load.
+     * @throws SQLException
+     */
+    void loadBlocks(WarCuboid region) throws SQLException {
+        Prefetch loaded = takePrefetch(region);
+        String world = loaded.origin.getWorld();
+        Map<Long, BlockVolume> sections;
+        try {
+            sections = loaded.sections.join();
+        } catch (CompletionException e) {
+            throw new SQLException("Exception fired while loading block data.", e.getCause());
+        }
+        keep(loaded, sections);
+        EditSession session = plugin.openEditSession(world, false);
+        for (Map.Entry<Long, BlockVolume> entry : sections.entrySet()) {
+            long key = entry.getKey();
+            int baseX = loaded.origin.getBlockX() + ZoneIndex.blockX(key) * SECTION_SIZE;
+            int baseY = loaded.origin.getBlockY() + ZoneIndex.blockY(key) * SECTION_SIZE;
+            int baseZ = loaded.origin.getBlockZ() + ZoneIndex.blockZ(key) * SECTION_SIZE;
+            entry.getValue().forEach((x, y, z, block) -> session.setBlock(baseX + x, baseY + y, baseZ + z, block));
+        }
+        EditSession.Result result = session.commit();
+        plugin.logInfo(String.format("Loaded zone %s: %d blocks changed, %d already in place.", zone.getName(),
+                result.getChanged(), result.getUnchanged()));
+    }
+
+    /**
+     * Decode a saved section, checking it against its checksum.
+     *
+     * @param offHeap true to keep the decoded blocks outside of the heap.
+     * @return decoded section, or null if it is corrupt.
+     */
+    private BlockVolume readSection(int sx, int sy, int sz, long checksum, byte[] data, boolean offHeap) {
+        if (checksum(data) != checksum) {
+            plugin.logInfo(String.format("Skipping corrupt section %d,%d,%d of zone %s.", sx, sy, sz, zone.getName()));
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return BlockVolume.readFrom(in, offHeap);
+        } catch (IOException | IllegalStateException e) {
+            plugin.logInfo(String.format("Skipping unreadable section %d,%d,%d of zone %s.", sx, sy, sz, zone.getName()));
+            return null;
+        }
+    }
+
+    /**
+     * Read every saved section in a range, without decoding it.
+     *
+     * @param database statements of the connection to read with.
+     * @param range    section range, as returned by {@link #sectionRange}, or null for every section.
+     * @return sections in the order they are placed.
+     * @throws SQLException
+     */
+    private static List<SectionFile.Section> readRows(StatementCache database, int[] range) throws SQLException {
+        PreparedStatement stmt;
+        if (range != null) {
+            stmt = database.prepare("SELECT sx, sy, sz, checksum, data FROM block_sections "
+                    + "WHERE sx BETWEEN ? AND ? AND sy BETWEEN ? AND ? AND sz BETWEEN ? AND ? ORDER BY sy, sz, sx");
+            stmt.setInt(1, range[0]);
+            stmt.setInt(2, range[3]);
+            stmt.setInt(3, range[1]);
+            stmt.setInt(4, range[4]);
+            stmt.setInt(5, range[2]);
+            stmt.setInt(6, range[5]);
+        } else {
+            stmt = database.prepare("SELECT sx, sy, sz, checksum, data FROM block_sections ORDER BY sy, sz, sx");
+        }
+        List<SectionFile.Section> rows = new ArrayList<>();
+        try (ResultSet result = stmt.executeQuery()) {
+            while (result.next()) {
+                rows.add(new SectionFile.Section(result.getInt("sx"), result.getInt("sy"), result.getInt("sz"),
+                        result.getLong("checksum"), result.getBytes("data")));
+            }
+        }
+        return rows;
+    }
+
+    private static long readRevision(StatementCache database) throws SQLException {
+        try (ResultSet result = database.prepare("SELECT revision FROM block_revision").executeQuery()) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Read every saved section along with the block revision it belongs to, for writing the section file.
+     *
+     * @param database statements of the connection to read with.
+     * @return current revision and sections.
+     * @throws SQLException
+     */
+    private static Revision readSaved(StatementCache database) throws SQLException {
+        return new Revision(readRevision(database), readRows(database, null));
     }
 
     /**
-     * Save an inventory to the zone storage.
+     * Decode sections in a range, in the order given. Runs on the codec thread.
+     *
+     * @param rows    saved sections.
+     * @param range   section range, as returned by {@link #sectionRange}. Sections outside of it are left out.
+     * @param offHeap true to keep the decoded blocks outside of the heap.
+     * @return decoded sections by {@link ZoneIndex#blockKey} of their section position. Corrupt sections are left out.
+     */
+    private Map<Long, BlockVolume> decode(List<SectionFile.Section> rows, int[] range, boolean offHeap) {
+        Map<Long, BlockVolume> sections = new LinkedHashMap<>();
+        SectionFile.read(rows, range, decoder(sections, offHeap));
+        return sections;
+    }
+
+    /**
+     * Decode sections in a range from the open section file. Runs on the codec thread.
+     *
+     * @param range   section range, as returned by {@link #sectionRange}.
+     * @param offHeap true to keep the decoded blocks outside of the heap.
+     * @return decoded sections by {@link ZoneIndex#blockKey} of their section position. Corrupt sections are left out.
+     */
+    private Map<Long, BlockVolume> decodeFile(int[] range, boolean offHeap) {
+        Map<Long, BlockVolume> sections = new LinkedHashMap<>();
+        sectionFile.read(range, decoder(sections, offHeap));
+        return sections;
+    }
+
+    private SectionFile.SectionVisitor decoder(Map<Long, BlockVolume> sections, boolean offHeap) {
+        return (sx, sy, sz, checksum, data) -> {
+            BlockVolume section = readSection(sx, sy, sz, checksum, data, offHeap);
+            if (section != null) {
+                sections.put(ZoneIndex.blockKey(sx, sy, sz), section);
+            }
+        };
+    }
+
+    /**
+     * Write every saved section to the section file. Runs on the codec thread.
+     *
+     * @param saved sections and the block revision they belong to.
+     * @return true if the file was written.
+     */
+    private boolean writeSectionFile(Revision saved) {
+        try {
+            sectionFile.write(saved.revision, saved.sections);
+            return true;
+        } catch (IOException e) {
+            plugin.logInfo(String.format("Failed to write section file for zone %s: %s", zone.getName(), e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Read and decode every saved section in a range. The database is read on the storage writer thread, after any
+     * writes queued before, and the sections are decoded on the codec thread. Sections are read from the section file
+     * if it is enabled, writing it first if it is missing or out of date.
+     *
+     * @param range   section range, as returned by {@link #sectionRange}.
+     * @param mapped  true to read through the section file.
+     * @param offHeap true to keep the decoded blocks outside of the heap.
+     * @return future completed on the codec thread with the decoded sections.
+     */
+    private CompletableFuture<Map<Long, BlockVolume>> readSections(int[] range, boolean mapped, boolean offHeap) {
+        if (!mapped) {
+            return writer.read(database -> readRows(database, range))
+                    .thenApplyAsync(rows -> decode(rows, range, offHeap), codec);
+        }
+        return writer.read(ZoneStorage::readRevision).thenComposeAsync(revision -> {
+            if (sectionFile.open(revision)) {
+                return CompletableFuture.completedFuture(decodeFile(range, offHeap));
+            }
+            return writer.read(ZoneStorage::readSaved).thenApplyAsync(saved -> {
+                if (writeSectionFile(saved) && sectionFile.open(saved.revision)) {
+                    return decodeFile(range, offHeap);
+                }
+                return decode(saved.sections, range, offHeap);
+            }, codec);
+        }, codec);
+    }
+
+    /**
+     * Start reading and decoding every saved section overlapping a region in the background, so that a reset of the
+     * region soon after does not wait on the disk. Does nothing if the region is already prefetched.
+     * The prefetched sections are used by the next load of the same region, unless the zone is saved first. If the
+     * zone is in the snapshot cache, its sections are taken from the cache instead.
+     *
+     * @param region region of the world that is about to be reset.
+     */
+    void prefetch(WarCuboid region) {
+        WarLocation origin = this.getPosition("position1");
+        int[] range = sectionRange(region, origin.getBlockX(), origin.getBlockY(), origin.getBlockZ());
+        if (prefetch != null && Arrays.equals(prefetch.range, range)) {
+            return;
+        }
+        SnapshotCache.Entry cached = plugin.getSnapshotCache().get(zone);
+        if (cached != null) {
+            Map<Long, BlockVolume> sections = new LinkedHashMap<>();
+            for (Map.Entry<Long, BlockVolume> entry : cached.getSections().entrySet()) {
+                long key = entry.getKey();
+                int sx = ZoneIndex.blockX(key), sy = ZoneIndex.blockY(key), sz = ZoneIndex.blockZ(key);
+                if (sx >= range[0] && sx <= range[3] && sy >= range[1] && sy <= range[4] && sz >= range[2] && sz <= range[5]) {
+                    sections.put(key, entry.getValue());
+                }
+            }
+            prefetch = new Prefetch(cached.getOrigin(), range, blocksVersion, true, CompletableFuture.completedFuture(sections));
+        } else {
+            boolean mapped = zone.getConfig().getBoolean(ZoneSetting.MAPPEDBLOCKS);
+            boolean offHeap = plugin.getWarConfig().getInt(WarConfig.WarSetting.SNAPSHOTOFFHEAP) != 0;
+            prefetch = new Prefetch(origin, range, blocksVersion, false, readSections(range, mapped, offHeap));
+        }
+    }
+
+    /**
+     * Add sections read from the database to the snapshot cache, if they are the entire zone and still current.
+     */
+    private void keep(Prefetch loaded, Map<Long, BlockVolume> sections) {
+        if (loaded.fromCache || loaded.version != blocksVersion) {
+            return;
+        }
+        WarLocation origin = loaded.origin;
+        if (Arrays.equals(loaded.range, sectionRange(zone.getCuboid(), origin.getBlockX(), origin.getBlockY(), origin.getBlockZ()))) {
+            plugin.getSnapshotCache().put(zone, new SnapshotCache.Entry(origin, sections));
+        }
+    }
+
+    /**
+     * Note a change to the saved blocks or their origin, discarding any copies read before it.
+     */
+    private void invalidateBlocks() {
+        blocksVersion++;
+        prefetch = null;
+        plugin.getSnapshotCache().invalidate(zone);
+    }
+
+    /**
+     * Check if sections are being read ahead of a reset, or are waiting to be used.
+     *
+     * @return true if a prefetch is held.
+     */
+    boolean isPrefetched() {
+        return prefetch != null;
+    }
+
+    /**
+     * Take the prefetched sections for a region, or start reading them if they were not prefetched.
+     */
+    private Prefetch takePrefetch(WarCuboid region) {
+        prefetch(region);
+        Prefetch taken = prefetch;
+        prefetch = null; // the world is about to change, so each prefetch is only loaded once
+        return taken;
+    }
+
+    /**
+     * Prepare to load every saved section overlapping a region into the world, a step at a time. Sections are read
+     * and decoded in the background, or taken from an earlier {@link #prefetch}, and the job waits without doing any
+     * work until they are ready.
+     *
+     * @param region region of the world to load.
+     * @return job placing up to {@link ResetScheduler#BLOCKS_PER_STEP} blocks per step.
+     */
+    ResetScheduler.Job openLoad(WarCuboid region) {
+        return new SectionLoader(takePrefetch(region));
+    }
+
+    /**
+     * Saved sections and the block revision they belong to.
+     */
+    private static final class Revision {
+        private final long revision;
+        private final List<SectionFile.Section> sections;
+
+        private Revision(long revision, List<SectionFile.Section> sections) {
+            this.revision = revision;
+            this.sections = sections;
+        }
+    }
+
+    /**
+     * Sections of the zone being read ahead of a reset.
+     */
+    private static final class Prefetch {
+        private final WarLocation origin;
+        private final int[] range;
+        private final int version;
+        private final boolean fromCache;
+        private final CompletableFuture<Map<Long, BlockVolume>> sections;
+
+        private Prefetch(WarLocation origin, int[] range, int version, boolean fromCache,
+                         CompletableFuture<Map<Long, BlockVolume>> sections) {
+            this.origin = origin;
+            this.range = range;
+            this.version = version;
+            this.fromCache = fromCache;
+            this.sections = sections;
+        }
+    }
+
+    /**
+     * Places decoded sections into the world a step at a time.
+     */
+    private class SectionLoader implements ResetScheduler.Job {
+        private final Prefetch loaded;
+        private EditSession session;
+        private int changed, unchanged;
+        private Iterator<Map.Entry<Long, BlockVolume>> sections;
+        private BlockVolume section;
+        private int baseX, baseY, baseZ;
+        private int index;
+
+        private SectionLoader(Prefetch loaded) {
+            this.loaded = loaded;
+        }
+
+        @Override
+        public boolean isReady() {
+            return sections != null || loaded.sections.isDone();
+        }
+
+        @Override
+        public void cancel() {
+            loaded.sections.cancel(false); // drop the decoded blocks once they are read
+        }
+
+        @Override
+        public boolean step() {
+            if (sections == null) {
+                if (!loaded.sections.isDone()) {
+                    return true; // still reading
+                }
+                Map<Long, BlockVolume> decoded = loaded.sections.join();
+                keep(loaded, decoded);
+                sections = decoded.entrySet().iterator();
+                session = plugin.openEditSession(loaded.origin.getWorld(), false);
+            }
+            if (section == null) {
+                if (!sections.hasNext()) {
+                    return false; // nothing saved in the region
+                }
+                Map.Entry<Long, BlockVolume> next = sections.next();
+                long key = next.getKey();
+                section = next.getValue();
+                baseX = loaded.origin.getBlockX() + ZoneIndex.blockX(key) * SECTION_SIZE;
+                baseY = loaded.origin.getBlockY() + ZoneIndex.blockY(key) * SECTION_SIZE;
+                baseZ = loaded.origin.getBlockZ() + ZoneIndex.blockZ(key) * SECTION_SIZE;
+                index = 0;
+            }
+            int end = Math.min(index + ResetScheduler.BLOCKS_PER_STEP, section.getVolume());
+            section.forEach(index, end, (x, y, z, block) -> session.setBlock(baseX + x, baseY + y, baseZ + z, block));
+            EditSession.Result result = session.commit();
+            changed += result.getChanged();
+            unchanged += result.getUnchanged();
+            index = end;
+            if (index == section.getVolume()) {
+                section = null;
+            }
+            if (section != null || sections.hasNext()) {
+                return true;
+            }
+            plugin.logInfo(String.format("Reset zone %s: %d blocks changed, %d already in place.", zone.getName(),
+                    changed, unchanged));
+            return false;
+        }
+    }
+
+    /**
+     * Save blocks in the world to the database.
+     * @throws SQLException
+     */
+    void saveBlocks() throws SQLException {
+        saveBlocks(zone.getCuboid());
+    }
+
+    /**
+     * Save every section of the zone overlapping a region. Whole sections are captured from the world, one at a time,
+     * and written by the storage writer in one transaction. Saving the entire zone also removes sections left over
+     * from a larger zone area. Blocks until the save is committed.
+     * <p>
+     * Blocks are placed by whole blocks from the block position1 is in, which is the lowest corner of the zone.
+     * Versions before 3 saved floor(block - position1) from a position1 at any corner, and loaded those rows back one
+     * block off when position1 was not on a block corner. {@link #migrateBlockRows(Connection)} converts such saves.
+     *
+     * @param region region of the world to save.
+     * @throws SQLException
+     */
+    void saveBlocks(WarCuboid region) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        long lastProgress = startTime;
+        ZoneCapture capture = openCapture(region);
+        while (capture.step()) {
+            if (System.currentTimeMillis() - lastProgress >= 5000L) {
+                lastProgress = System.currentTimeMillis();
+                String seconds = new DecimalFormat("#0.00").format((double) (lastProgress - startTime) / 1000.0D);
+                plugin.logInfo("Still saving zone " + zone.getName() + ", " + seconds + " seconds elapsed.");
+            }
+        }
+        try {
+            capture.getFuture().join();
+        } catch (CompletionException e) {
+            throw new SQLException("Failed to insert block information.", e.getCause());
+        }
+    }
+
+    /**
+     * Prepare to save every section of the zone overlapping a region as it is right now, without blocking the server.
+     * Blocks are captured a step at a time by the returned job, which must be told about block changes. Sections are
+     * encoded on the codec thread as they are captured, and written together by the storage writer in one
+     * transaction, so the stored zone changes all at once when the save finishes.
+     *
+     * @param region region of the world to save.
+     * @return capture job.
+     */
+    ZoneCapture openCapture(WarCuboid region) {
+        return new ZoneCapture(plugin, zone.getCuboid(), region, new SectionSink());
+    }
+
+    /**
+     * Encodes captured sections on the codec thread, and writes them once the capture is finished.
+     */
+    private class SectionSink implements ZoneCapture.Sink {
+        // only used on the codec thread
+        private final Map<Long, byte[]> encoded = new HashMap<>();
+        private volatile Throwable failure;
+
+        @Override
+        public void write(int sx, int sy, int sz, BlockVolume section) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    encoded.put(ZoneIndex.blockKey(sx, sy, sz), encodeSection(section));
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, codec).whenComplete((result, error) -> {
+                if (error != null) {
+                    failure = error;
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<Void> finish(boolean entireZone, int maxSx, int maxSy, int maxSz) {
+            invalidateBlocks(); // read before this save
+            boolean mapped = zone.getConfig().getBoolean(ZoneSetting.MAPPEDBLOCKS);
+            // runs after every section queued for encoding
+            return CompletableFuture.supplyAsync(() -> {
+                Map<Long, byte[]> sections = new HashMap<>(encoded);
+                encoded.clear();
+                if (failure != null) {
+                    throw new CompletionException(new SQLException("Failed to encode block section.", failure));
+                }
+                return sections;
+            }, codec).thenCompose(sections -> writer.read(database -> {
+                PreparedStatement stmt = database.prepare(WRITE_SECTION_SQL);
+                for (Map.Entry<Long, byte[]> entry : sections.entrySet()) {
+                    long key = entry.getKey();
+                    writeSection(stmt, ZoneIndex.blockX(key), ZoneIndex.blockY(key), ZoneIndex.blockZ(key), entry.getValue());
+                }
+                if (entireZone) {
+                    stmt = database.prepare("DELETE FROM block_sections WHERE sx > ? OR sy > ? OR sz > ?");
+                    stmt.setInt(1, maxSx);
+                    stmt.setInt(2, maxSy);
+                    stmt.setInt(3, maxSz);
+                    stmt.executeUpdate();
+                }
+                database.prepare("UPDATE block_revision SET revision = revision + 1").executeUpdate();
+                return mapped ? readSaved(database) : null;
+            })).thenAcceptAsync(saved -> {
+                if (saved != null) {
+                    // only written once the transaction is committed, stamped with its revision
+                    writeSectionFile(saved);
+                }
+            }, codec);
+        }
+
+        @Override
+        public void discard() {
+            codec.execute(encoded::clear);
+        }
+    }
+
+    /**
+     * Queue an inventory to be saved to the zone storage.
      *
      * @param name      Name of inventory to store.
      * @param inventory Name and contents of inventory to store.
      * @throws SQLException
      */
     void saveInventory(String name, WarInventory inventory) throws SQLException {
+        inventories.put(name, inventory);
+        writer.submit(database -> writeInventory(database, name, inventory));
+    }
+
+    private static void writeInventory(StatementCache statements, String name, WarInventory inventory) throws SQLException {
         int inv_id;
-        if (!containsInventory(name)) {
-            try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO inv_labels (id, label) VALUES (null, ?)")) {
-                stmt.setString(1, name);
-                stmt.executeUpdate();
-            }
-        }
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM inv_labels WHERE label = ? LIMIT 1")) {
+        if (readInventory(statements, name) == null) {
+            PreparedStatement stmt = statements.prepare("INSERT INTO inv_labels (id, label) VALUES (null, ?)");
             stmt.setString(1, name);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    inv_id = resultSet.getInt("id");
-                } else {
-                    throw new SQLException("Failed to find label id.");
-                }
+            stmt.executeUpdate();
+        }
+        PreparedStatement stmt = statements.prepare("SELECT id FROM inv_labels WHERE label = ? LIMIT 1");
+        stmt.setString(1, name);
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            if (resultSet.next()) {
+                inv_id = resultSet.getInt("id");
+            } else {
+                throw new SQLException("Failed to find label id.");
             }
         }
-        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM inventories WHERE inv_id = ?")) {
+        stmt = statements.prepare("DELETE FROM inventories WHERE inv_id = ?");
+        stmt.setInt(1, inv_id);
+        stmt.executeUpdate();
+        stmt = statements.prepare("INSERT INTO inventories (inv_id, item_id, name, data, size) VALUES (?, ?, ?, ?, ?)");
+        WarItem[] contents = inventory.getContents();
+        for (int i = 0; i < WarInventory.INVENTORY_LENGTH + 5; i++) {
+            WarItem item;
+            if (i < contents.length) {
+                item = contents[i];
+            } else if (i - WarInventory.INVENTORY_LENGTH == 0) {
+                item = inventory.getHelmet();
+            } else if (i - WarInventory.INVENTORY_LENGTH == 1) {
+                item = inventory.getChestplate();
+            } else if (i - WarInventory.INVENTORY_LENGTH == 2) {
+                item = inventory.getLeggings();
+            } else if (i - WarInventory.INVENTORY_LENGTH == 3) {
+                item = inventory.getBoots();
+            } else if (i - WarInventory.INVENTORY_LENGTH == 4) {
+                item = inventory.getOffHand();
+            } else {
+                continue;
+            }
+            if (item == null) {
+                continue;
+            }
             stmt.setInt(1, inv_id);
-            stmt.executeUpdate();
+            stmt.setInt(2, i);
+            stmt.setString(3, item.getBlockName());
+            stmt.setString(4, item.getSerialized());
+            stmt.setInt(5, item.getCount());
+            stmt.addBatch();
         }
-        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO inventories (inv_id, item_id, name, data, size) VALUES (?, ?, ?, ?, ?)")) {
-            WarItem[] contents = inventory.getContents();
-            for (int i = 0; i < WarInventory.INVENTORY_LENGTH + 5; i++) {
-                WarItem item;
-                if (i < contents.length) {
-                    item = contents[i];
-                } else if (i - WarInventory.INVENTORY_LENGTH == 0) {
-                    item = inventory.getHelmet();
-                } else if (i - WarInventory.INVENTORY_LENGTH == 1) {
-                    item = inventory.getChestplate();
-                } else if (i - WarInventory.INVENTORY_LENGTH == 2) {
-                    item = inventory.getLeggings();
-                } else if (i - WarInventory.INVENTORY_LENGTH == 3) {
-                    item = inventory.getBoots();
-                } else if (i - WarInventory.INVENTORY_LENGTH == 4) {
-                    item = inventory.getOffHand();
-                } else {
-                    continue;
-                }
-                if (item == null) {
-                    continue;
-                }
-                stmt.setInt(1, inv_id);
-                stmt.setInt(2, i);
-                stmt.setString(3, item.getBlockName());
-                stmt.setString(4, item.getSerialized());
-                stmt.setInt(5, item.getCount());
-                stmt.addBatch();
+        stmt.executeBatch();
+    }
+
+    /**
+     * Read every saved inventory into memory. Only called while the zone is opened, before any writes are queued.
+     *
+     * @throws SQLException
+     */
+    private void loadInventories() throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (ResultSet resultSet = statements.prepare("SELECT label FROM inv_labels").executeQuery()) {
+            while (resultSet.next()) {
+                names.add(resultSet.getString("label"));
             }
-            stmt.executeBatch();
+        }
+        for (String name : names) {
+            inventories.put(name, readInventory(statements, name));
         }
     }
 
     /**
-     * Retrieve all items in inventory from the database.
+     * Retrieve all items in a saved inventory.
      *
      * @param name name of inventory to lookup.
      * @return inventory, or null if not found.
      * @throws SQLException
      */
     WarInventory getInventory(String name) throws SQLException {
+        return inventories.get(name);
+    }
+
+    private static WarInventory readInventory(StatementCache statements, String name) throws SQLException {
         int inv_id;
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM inv_labels WHERE label = ? LIMIT 1")) {
-            stmt.setString(1, name);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    inv_id = resultSet.getInt("id");
-                } else {
-                    return null;
-                }
+        PreparedStatement stmt = statements.prepare("SELECT id FROM inv_labels WHERE label = ? LIMIT 1");
+        stmt.setString(1, name);
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            if (resultSet.next()) {
+                inv_id = resultSet.getInt("id");
+            } else {
+                return null;
             }
         }
         WarItem[] contents = new WarItem[WarInventory.INVENTORY_LENGTH];
         WarItem helmet = null, chestplate = null, leggings = null, boots = null, offHand = null;
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT item_id, name, data, size FROM inventories WHERE inv_id = ?")) {
-            stmt.setInt(1, inv_id);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                while (resultSet.next()) {
-                    int i = resultSet.getInt("item_id");
-                    WarItem item = new WarItem(resultSet.getString("name"), resultSet.getString("data"), resultSet.getInt("size"));
-                    if (i - WarInventory.INVENTORY_LENGTH == 0) {
-                        helmet = item;
-                    } else if (i - WarInventory.INVENTORY_LENGTH == 1) {
-                        chestplate = item;
-                    } else if (i - WarInventory.INVENTORY_LENGTH == 2) {
-                        leggings = item;
-                    } else if (i - WarInventory.INVENTORY_LENGTH == 3) {
-                        boots = item;
-                    } else if (i - WarInventory.INVENTORY_LENGTH == 4) {
-                        offHand = item;
-                    } else if (i < WarInventory.INVENTORY_LENGTH) {
-                        contents[i] = item;
-                    }
+        stmt = statements.prepare("SELECT item_id, name, data, size FROM inventories WHERE inv_id = ?");
+        stmt.setInt(1, inv_id);
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            while (resultSet.next()) {
+                int i = resultSet.getInt("item_id");
+                WarItem item = new WarItem(resultSet.getString("name"), resultSet.getString("data"), resultSet.getInt("size"));
+                if (i - WarInventory.INVENTORY_LENGTH == 0) {
+                    helmet = item;
+                } else if (i - WarInventory.INVENTORY_LENGTH == 1) {
+                    chestplate = item;
+                } else if (i - WarInventory.INVENTORY_LENGTH == 2) {
+                    leggings = item;
+                } else if (i - WarInventory.INVENTORY_LENGTH == 3) {
+                    boots = item;
+                } else if (i - WarInventory.INVENTORY_LENGTH == 4) {
+                    offHand = item;
+                } else if (i < WarInventory.INVENTORY_LENGTH) {
+                    contents[i] = item;
                 }
             }
         }
@@ -460,12 +1224,20 @@ class ZoneStorage implements AutoCloseable {
     }
 
     /**
-     * Closes this resource, relinquishing any underlying resources.
+     * Waits for all queued writes and section file updates to finish, then closes the database connections.
      *
      * @throws Exception if this resource cannot be closed
      */
     @Override
     public void close() throws Exception {
+        plugin.getSnapshotCache().invalidate(zone);
+        writer.close();
+        codec.shutdown();
+        if (!codec.awaitTermination(1, TimeUnit.MINUTES)) {
+            plugin.logInfo(String.format("Gave up waiting for the section file of zone %s.", zone.getName()));
+        }
+        sectionFile.close();
+        statements.close();
         connection.close();
     }
 }
@@ -0,0 +1,91 @@
+package com.tommytony.war;
+
+import com.tommytony.war.struct.WarBlock;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EditSessionTest extends TestCase {
+    private ServerAPI plugin;
+    private Map<String, WarBlock> world;
+    private List<String> calls;
+
+    private class TestSession extends EditSession {
+        private TestSession(boolean recordUndo) {
+            super(plugin, "world", recordUndo);
+        }
+
+        @Override
+        protected void startChunk(int chunkX, int chunkZ) {
+            calls.add("chunk " + chunkX + "," + chunkZ);
+        }
+
+        @Override
+        protected WarBlock getBlock(int x, int y, int z) {
+            WarBlock block = world.get(x + "," + y + "," + z);
+            return block != null ? block : block("minecraft:air");
+        }
+
+        @Override
+        protected boolean placeBlock(int x, int y, int z, WarBlock block) {
+            boolean changed = !block.getBlockName().equals(getBlock(x, y, z).getBlockName());
+            world.put(x + "," + y + "," + z, block);
+            return changed;
+        }
+    }
+
+    private static WarBlock block(String name) {
+        return new WarBlock(name, null, "", (short) 0);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        plugin = mock(ServerAPI.class);
+        world = new HashMap<>();
+        calls = new ArrayList<>();
+        when(plugin.openEditSession("world", false)).thenAnswer(invocation -> new TestSession(false));
+    }
+
+    public void testGroupedByChunk() throws Exception {
+        EditSession session = new TestSession(false);
+        session.setBlock(0, 0, 0, block("minecraft:stone"));
+        session.setBlock(-1, 0, 0, block("minecraft:stone"));
+        session.setBlock(15, 0, 15, block("minecraft:stone"));
+        session.setBlock(0, 0, 0, block("minecraft:stone"));
+        assertEquals(4, session.getQueued());
+        EditSession.Result result = session.commit();
+        assertEquals(2, calls.size());
+        assertEquals("chunk 0,0", calls.get(0));
+        assertEquals("chunk -1,0", calls.get(1));
+        assertEquals(3, result.getChanged());
+        assertEquals(1, result.getUnchanged());
+        assertEquals(0, session.getQueued());
+    }
+
+    public void testUndo() throws Exception {
+        world.put("1,2,3", block("minecraft:dirt"));
+        EditSession session = new TestSession(true);
+        session.setBlock(1, 2, 3, block("minecraft:stone"));
+        session.setBlock(1, 2, 3, block("minecraft:glass"));
+        session.commit();
+        assertEquals("minecraft:glass", world.get("1,2,3").getBlockName());
+        EditSession undo = session.undo();
+        assertEquals(2, undo.getQueued());
+        undo.commit();
+        assertEquals("minecraft:dirt", world.get("1,2,3").getBlockName());
+    }
+
+    public void testUndoRequiresBuffer() throws Exception {
+        try {
+            new TestSession(false).undo();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.tommytony.war.struct;
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class WarCuboidTest extends TestCase {
 
@@ -68,4 +71,67 @@ public class WarCuboidTest extends TestCase {
         }
         assertEquals(i, (int) cuboid.getSize());
     }
-}
\ No newline at end of file
+
+    public void testForEachBlock() throws Exception {
+        WarCuboid cuboid = new WarCuboid(new WarLocation(-20, 60, 30, "world"), new WarLocation(14, 63, 2, "world"));
+
+        Set<WarLocation> visited = new HashSet<>();
+        int[] lastChunk = {Integer.MIN_VALUE, Integer.MIN_VALUE};
+        Set<Long> finishedChunks = new HashSet<>();
+        cuboid.forEachBlock((x, y, z) -> {
+            assertTrue(visited.add(new WarLocation(x, y, z, "world")));
+            int chunkX = x >> 4, chunkZ = z >> 4;
+            if (chunkX != lastChunk[0] || chunkZ != lastChunk[1]) {
+                // each chunk column is visited in one run
+                assertTrue(finishedChunks.add(((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL)));
+                lastChunk[0] = chunkX;
+                lastChunk[1] = chunkZ;
+            }
+        });
+        assertEquals((int) cuboid.getSize(), visited.size());
+        for (WarLocation block : cuboid) {
+            assertTrue(visited.contains(block));
+        }
+    }
+
+    public void testShell() throws Exception {
+        WarCuboid[] cuboids = {
+                new WarCuboid(new WarLocation(0, 0, 0, "world"), new WarLocation(6, 4, 9, "world")),
+                new WarCuboid(new WarLocation(-3, 10, 5, "world"), new WarLocation(3, 10, 1, "world")),
+                new WarCuboid(new WarLocation(2, 2, 2, "world"), new WarLocation(4, 4, 2, "world")),
+                new WarCuboid(new WarLocation(7, 7, 7, "world"), new WarLocation(7, 7, 7, "world"))
+        };
+        for (WarCuboid cuboid : cuboids) {
+            WarLocation min = cuboid.getMinBlock(), max = cuboid.getMaxBlock();
+            Set<WarLocation> expected = new HashSet<>();
+            for (WarLocation block : cuboid) {
+                if (block.getX() == min.getX() || block.getX() == max.getX()
+                        || block.getY() == min.getY() || block.getY() == max.getY()
+                        || block.getZ() == min.getZ() || block.getZ() == max.getZ()) {
+                    expected.add(block);
+                }
+            }
+
+            List<WarLocation> iterated = new ArrayList<>();
+            cuboid.shellIterator().forEachRemaining(iterated::add);
+            assertEquals(expected.size(), iterated.size());
+            assertEquals(expected, new HashSet<>(iterated));
+
+            List<WarLocation> visited = new ArrayList<>();
+            cuboid.forEachShellBlock((x, y, z) -> visited.add(new WarLocation(x, y, z, "world")));
+            assertEquals(iterated, visited);
+        }
+    }
+
+    public void testContains() throws Exception {
+        WarCuboid cuboid = new WarCuboid(new WarLocation(10.0, 64.0, -5.0, "world"), new WarLocation(-2.0, 70.0, 5.0, "world"));
+
+        assertTrue(cuboid.contains(new WarLocation(0.5, 65.0, 0.5, "world")));
+        assertTrue(cuboid.contains(new WarLocation(10.9, 70.9, 5.9, "world")));
+        assertTrue(cuboid.contains(new WarLocation(-2.0, 64.0, -5.0, "world")));
+        assertFalse(cuboid.contains(new WarLocation(-2.1, 64.0, -5.0, "world")));
+        assertFalse(cuboid.contains(new WarLocation(11.0, 65.0, 0.0, "world")));
+        assertFalse(cuboid.contains(new WarLocation(0.5, 65.0, 0.5, "world_nether")));
+        assertEquals("13x7x11", cuboid.toString());
+    }
+}
@@ -0,0 +1,56 @@
+package com.tommytony.war.struct;
+
+import junit.framework.TestCase;
+
+public class ZoneSnapshotTest extends TestCase {
+    private static WarBlock block(String name) {
+        return new WarBlock(name, null, "", (short) 0);
+    }
+
+    private void checkGrowth(boolean offHeap) {
+        ZoneSnapshot snapshot = new ZoneSnapshot(16, 16, 16, offHeap);
+        assertEquals(offHeap, snapshot.isOffHeap());
+        int volume = snapshot.getVolume();
+        for (int i = 0; i < volume; i++) {
+            snapshot.set(i, block("minecraft:type" + i % 300));
+        }
+        assertEquals(300, snapshot.getPalette().size());
+        assertEquals(9, snapshot.getBitsPerBlock());
+        for (int i = 0; i < volume; i++) {
+            assertEquals(i % 300, snapshot.getId(i));
+        }
+        // ids and palette only, well under the four bytes per block of an int array
+        assertTrue(snapshot.getMemorySize() - 300 * 128 < volume * 2);
+    }
+
+    public void testPaletteGrowth() throws Exception {
+        checkGrowth(false);
+        checkGrowth(true);
+    }
+
+    public void testForEachId() throws Exception {
+        ZoneSnapshot snapshot = new ZoneSnapshot(5, 3, 4);
+        snapshot.addPalette("minecraft:air", (short) 0);
+        snapshot.addPalette("minecraft:stone", (short) 0);
+        snapshot.addPalette("minecraft:dirt", (short) 0);
+        for (int i = 0; i < snapshot.getVolume(); i++) {
+            snapshot.setId(i, i % 3);
+        }
+        int[] next = {7};
+        snapshot.forEachId(7, 50, (x, y, z, id) -> {
+            assertEquals(next[0], snapshot.index(x, y, z));
+            assertEquals(next[0] % 3, id);
+            next[0]++;
+        });
+        assertEquals(50, next[0]);
+    }
+
+    public void testSerialized() throws Exception {
+        ZoneSnapshot snapshot = new ZoneSnapshot(2, 2, 2);
+        snapshot.set(3, new WarBlock("minecraft:sign", null, "hello", (short) 0));
+        assertEquals("hello", snapshot.get(3).getSerialized());
+        assertSame(snapshot.get(0), snapshot.get(1));
+        snapshot.set(3, block("minecraft:sign"));
+        assertTrue(snapshot.getSerialized().isEmpty());
+    }
+}
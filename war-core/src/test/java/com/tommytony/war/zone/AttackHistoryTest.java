@@ -0,0 +1,47 @@
+package com.tommytony.war.zone;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.WarPlayer;
+import junit.framework.TestCase;
+
+import static org.mockito.Mockito.mock;
+
+public class AttackHistoryTest extends TestCase {
+    private WarPlayer a, b, c, d;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        a = mock(WarPlayer.class);
+        b = mock(WarPlayer.class);
+        c = mock(WarPlayer.class);
+        d = mock(WarPlayer.class);
+    }
+
+    public void testLastAttacker() throws Exception {
+        AttackHistory history = new AttackHistory(3);
+        assertNull(history.getLastAttacker(0, 3000));
+        history.add(a, 1000);
+        history.add(b, 2000);
+        assertSame(b, history.getLastAttacker(2500, 3000));
+        assertNull(history.getLastAttacker(5000, 3000));
+        history.clear();
+        assertNull(history.getLastAttacker(2500, 3000));
+    }
+
+    public void testAssists() throws Exception {
+        AttackHistory history = new AttackHistory(3);
+        history.add(a, 1000);
+        history.add(b, 2000);
+        history.add(a, 2100);
+        history.add(c, 2200);
+        history.add(c, 2300);
+        assertSame(c, history.getLastAttacker(2400, 3000));
+        assertEquals(ImmutableList.of(a, b), history.getAssists(2400, 3000));
+        // b expires first
+        assertEquals(ImmutableList.of(a), history.getAssists(5050, 3000));
+        // oldest attacks are overwritten
+        history.add(d, 2400);
+        history.add(a, 2500);
+        assertEquals(ImmutableList.of(d, c), history.getAssists(2600, 3000));
+    }
+}
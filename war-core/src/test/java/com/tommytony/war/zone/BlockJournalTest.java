@@ -0,0 +1,43 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarLocation;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class BlockJournalTest extends TestCase {
+    private static WarBlock block(String name) {
+        return new WarBlock(name, null, "", (short) 0);
+    }
+
+    public void testFirstChangeKept() throws Exception {
+        BlockJournal journal = new BlockJournal(10);
+        journal.record(1, 2, 3, () -> block("stone"));
+        journal.record(1, 2, 3, () -> {
+            fail("original requested for a block already recorded");
+            return null;
+        });
+        journal.record(-5, 255, -7, () -> block("dirt"));
+        assertEquals(2, journal.size());
+        Map<WarLocation, String> restored = new HashMap<>();
+        journal.forEach("world", (location, original) -> restored.put(location, original.getBlockName()));
+        assertEquals("stone", restored.get(new WarLocation(1, 2, 3, "world")));
+        assertEquals("dirt", restored.get(new WarLocation(-5, 255, -7, "world")));
+    }
+
+    public void testOverflow() throws Exception {
+        BlockJournal journal = new BlockJournal(2);
+        journal.record(0, 0, 0, () -> block("stone"));
+        journal.record(0, 1, 0, () -> block("stone"));
+        assertFalse(journal.isOverflowed());
+        journal.record(0, 2, 0, () -> block("stone"));
+        assertTrue(journal.isOverflowed());
+        assertEquals(0, journal.size());
+        journal.clear();
+        assertFalse(journal.isOverflowed());
+        journal.record(0, 2, 0, () -> block("stone"));
+        assertEquals(1, journal.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarBlock;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.Random;
+
+public class BlockVolumeTest extends TestCase {
+    private static BlockVolume copy(BlockVolume volume) {
+        BlockVolume copy = new BlockVolume(volume.getSizeX(), volume.getSizeY(), volume.getSizeZ());
+        for (WarBlock type : volume.getPalette()) {
+            copy.addPalette(type.getBlockName(), type.getMeta());
+        }
+        copy.decode(volume.encode());
+        volume.getSerialized().forEach(copy::setSerialized);
+        return copy;
+    }
+
+    private static void assertSameBlocks(BlockVolume expected, BlockVolume actual) {
+        expected.forEach((x, y, z, block) -> {
+            WarBlock other = actual.get(x, y, z);
+            assertEquals(block.getBlockName(), other.getBlockName());
+            assertEquals(block.getMeta(), other.getMeta());
+            assertEquals(block.getSerialized(), other.getSerialized());
+        });
+    }
+
+    private static void fill(BlockVolume volume, BlockVolume.BlockConsumer setter) {
+        for (int y = 0; y < volume.getSizeY(); y++) {
+            for (int z = 0; z < volume.getSizeZ(); z++) {
+                for (int x = 0; x < volume.getSizeX(); x++) {
+                    setter.accept(x, y, z, null);
+                }
+            }
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        BlockVolume volume = new BlockVolume(16, 20, 9);
+        Random random = new Random(42);
+        fill(volume, (x, y, z, block) -> {
+            WarBlock set;
+            if (y > 10) {
+                set = new WarBlock("AIR", null, "", (short) 0);
+            } else if (y == 10 && x == 3) {
+                set = new WarBlock("SIGN_POST", null, "hello\nworld", (short) 4);
+            } else {
+                set = new WarBlock("WOOL", null, "", (short) random.nextInt(16));
+            }
+            volume.set(x, y, z, set);
+        });
+        BlockVolume copy = copy(volume);
+        assertSameBlocks(volume, copy);
+        assertEquals("hello\nworld", copy.get(3, 10, 0).getSerialized());
+        assertEquals("", copy.get(4, 10, 0).getSerialized());
+    }
+
+    public void testRunsCompress() throws Exception {
+        BlockVolume volume = new BlockVolume(100, 100, 100);
+        WarBlock air = new WarBlock("AIR", null, "", (short) 0);
+        fill(volume, (x, y, z, block) -> volume.set(x, y, z, air));
+        volume.set(50, 50, 50, new WarBlock("STONE", null, "", (short) 0));
+        byte[] encoded = volume.encode();
+        assertTrue(encoded.length < 32);
+        BlockVolume copy = copy(volume);
+        assertSameBlocks(volume, copy);
+        List<WarBlock> palette = copy.getPalette();
+        assertEquals(2, palette.size());
+    }
+
+    public void testCorruptData() throws Exception {
+        BlockVolume volume = new BlockVolume(4, 4, 4);
+        volume.addPalette("AIR", (short) 0);
+        try {
+            volume.decode(new byte[2]);
+            fail("Expected truncated data to be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testSectionStream() throws Exception {
+        BlockVolume volume = new BlockVolume(20, 5, 18);
+        fill(volume, (x, y, z, block) -> volume.set(x, y, z, new WarBlock(x < 16 ? "STONE" : "DIRT", null,
+                x == 17 && z == 17 ? "chest\ncontents" : "", (short) y)));
+        BlockVolume section = volume.copy(16, 0, 16, 4, 5, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            section.writeTo(out);
+        }
+        BlockVolume read = BlockVolume.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(4, read.getSizeX());
+        assertEquals(2, read.getSizeZ());
+        assertSameBlocks(section, read);
+        assertEquals("chest\ncontents", read.get(1, 3, 1).getSerialized());
+        assertEquals("DIRT", read.get(0, 0, 0).getBlockName());
+        assertEquals(4, read.get(0, 4, 0).getMeta());
+    }
+}
@@ -0,0 +1,47 @@
+package com.tommytony.war.zone;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarPlayer;
+import junit.framework.TestCase;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GameRegistryTest extends TestCase {
+    private GameRegistry registry;
+    private Warzone zone;
+    private WarGame game;
+    private WarPlayer player;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        registry = new GameRegistry();
+        ServerAPI plugin = mock(ServerAPI.class);
+        when(plugin.getGameRegistry()).thenReturn(registry);
+        zone = mock(Warzone.class);
+        when(zone.getTeams()).thenReturn(ImmutableList.of("red", "blue"));
+        game = new WarGame(zone, plugin);
+        player = mock(WarPlayer.class);
+        when(player.getPlayerId()).thenReturn(UUID.randomUUID());
+    }
+
+    public void testMembership() throws Exception {
+        assertNull(registry.getGame(player));
+
+        WarGame.Team red = game.getTeam("red");
+        registry.add(player, red);
+        assertSame(red, registry.getTeam(player));
+        assertSame(game, registry.getGame(player));
+        assertSame(zone, registry.getWarzone(player));
+
+        WarPlayer other = mock(WarPlayer.class);
+        when(other.getPlayerId()).thenReturn(UUID.randomUUID());
+        assertNull(registry.getTeam(other));
+
+        registry.remove(player);
+        assertNull(registry.getWarzone(player));
+    }
+}
@@ -0,0 +1,158 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarConfig;
+import junit.framework.TestCase;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResetSchedulerTest extends TestCase {
+    private long now;
+    private ResetScheduler scheduler;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        ServerAPI plugin = mock(ServerAPI.class);
+        WarConfig config = mock(WarConfig.class);
+        when(config.getInt(WarConfig.WarSetting.RESETBUDGET)).thenReturn(10);
+        when(plugin.getWarConfig()).thenReturn(config);
+        now = 0;
+        scheduler = new ResetScheduler(plugin, () -> now);
+    }
+
+    /**
+     * Job that takes a fixed number of steps, each advancing the clock by one millisecond.
+     */
+    private ResetScheduler.Job job(int[] remaining) {
+        return () -> {
+            now += 1_000_000;
+            return --remaining[0] > 0;
+        };
+    }
+
+    public void testBudgetShared() throws Exception {
+        Warzone a = mock(Warzone.class), b = mock(Warzone.class);
+        int[] stepsA = {100}, stepsB = {100};
+        CompletableFuture<Void> doneA = scheduler.submit(a, job(stepsA), true);
+        scheduler.submit(b, job(stepsB), true);
+        scheduler.tick();
+        assertEquals(95, stepsA[0]);
+        assertEquals(95, stepsB[0]);
+        assertFalse(doneA.isDone());
+        while (scheduler.isResetting(a)) {
+            scheduler.tick();
+        }
+        assertTrue(doneA.isDone());
+        assertEquals(0, scheduler.getPendingResets());
+        assertEquals(200, scheduler.getCompletedSteps());
+    }
+
+    public void testCoalesce() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        int[] first = {3}, second = {3}, partial = {20};
+        CompletableFuture<Void> future = scheduler.submit(zone, job(first), true);
+        assertSame(future, scheduler.getUnstartedFull(zone));
+        boolean[] cancelled = {false};
+        ResetScheduler.Job merged = new ResetScheduler.Job() {
+            @Override
+            public boolean step() {
+                return job(second).step();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled[0] = true;
+            }
+        };
+        assertSame(future, scheduler.submit(zone, merged, true));
+        assertTrue(cancelled[0]);
+        CompletableFuture<Void> partialDone = scheduler.submit(zone, job(partial), false);
+        assertNotSame(future, partialDone);
+        while (!future.isDone()) {
+            scheduler.tick();
+        }
+        assertNull(scheduler.getUnstartedFull(zone));
+        assertFalse(partialDone.isDone()); // the reset does not wait for work queued behind it
+        scheduler.finishAll();
+        assertEquals(0, first[0]);
+        assertEquals(3, second[0]); // merged into the first full reset
+        assertEquals(0, partial[0]);
+        assertTrue(partialDone.isDone());
+    }
+
+    public void testFailureOnlyFailsItsJob() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getName()).thenReturn("test");
+        int[] steps = {3};
+        CompletableFuture<Void> failed = scheduler.submit(zone, () -> {
+            throw new IllegalStateException("unreadable section");
+        }, false);
+        CompletableFuture<Void> next = scheduler.submit(zone, job(steps), false);
+        scheduler.finishAll();
+        assertTrue(failed.isCompletedExceptionally());
+        assertTrue(next.isDone());
+        assertFalse(next.isCompletedExceptionally());
+    }
+
+    public void testCancel() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        int[] steps = {1000};
+        CompletableFuture<Void> future = scheduler.submit(zone, job(steps), false);
+        scheduler.tick();
+        assertTrue(scheduler.cancel(zone));
+        assertTrue(future.isCancelled());
+        int left = steps[0];
+        scheduler.tick();
+        assertEquals(left, steps[0]);
+        assertFalse(scheduler.cancel(zone));
+    }
+
+    public void testWaitsForReadyJob() throws Exception {
+        Warzone waiting = mock(Warzone.class), other = mock(Warzone.class);
+        boolean[] ready = {false};
+        int[] stepsWaiting = {5}, stepsOther = {100};
+        ResetScheduler.Job inner = job(stepsWaiting);
+        scheduler.submit(waiting, new ResetScheduler.Job() {
+            @Override
+            public boolean step() {
+                return inner.step();
+            }
+
+            @Override
+            public boolean isReady() {
+                return ready[0];
+            }
+        }, true);
+        scheduler.submit(other, job(stepsOther), true);
+        scheduler.tick();
+        assertEquals(5, stepsWaiting[0]);
+        assertEquals(90, stepsOther[0]); // the whole budget goes to the zone that can use it
+        ready[0] = true;
+        scheduler.finishAll();
+        assertEquals(0, stepsWaiting[0]);
+        assertFalse(scheduler.isResetting(waiting));
+    }
+
+    public void testFinishAllGivesUp() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getName()).thenReturn("test");
+        CompletableFuture<Void> stuck = scheduler.submit(zone, new ResetScheduler.Job() {
+            @Override
+            public boolean step() {
+                return true;
+            }
+
+            @Override
+            public boolean isReady() {
+                now += 10_000_000_000L; // ten seconds waiting for another thread
+                return false;
+            }
+        }, true);
+        scheduler.finishAll();
+        assertTrue(stuck.isCancelled());
+        assertFalse(scheduler.isResetting(zone));
+    }
+}
@@ -0,0 +1,61 @@
+package com.tommytony.war.zone;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SectionFileTest extends TestCase {
+    private File dir;
+    private SectionFile file;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("war").toFile();
+        file = new SectionFile(new File(dir, "test.blocks"));
+    }
+
+    public void tearDown() throws Exception {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    private List<int[]> read(int[] range) {
+        List<int[]> read = new ArrayList<>();
+        file.read(range, (sx, sy, sz, checksum, data) -> read.add(new int[]{sx, sy, sz, (int) checksum, data.length}));
+        return read;
+    }
+
+    public void testRoundTrip() throws Exception {
+        assertFalse(file.open(1));
+        file.write(7, Arrays.asList(new SectionFile.Section(0, 0, 0, 11, new byte[]{1, 2, 3}),
+                new SectionFile.Section(1, 0, 0, 12, new byte[]{4}),
+                new SectionFile.Section(0, 1, 0, 13, new byte[0])));
+        assertFalse(file.open(6));
+        assertTrue(file.open(7));
+        List<int[]> all = read(new int[]{0, 0, 0, 1, 1, 1});
+        assertEquals(3, all.size());
+        assertTrue(Arrays.equals(new int[]{1, 0, 0, 12, 1}, all.get(1)));
+        List<int[]> part = read(new int[]{0, 1, 0, 0, 1, 0});
+        assertEquals(1, part.size());
+        assertTrue(Arrays.equals(new int[]{0, 1, 0, 13, 0}, part.get(0)));
+        assertFalse(new File(dir, "test.blocks.tmp").exists());
+    }
+
+    public void testDamagedIndexRejected() throws Exception {
+        file.write(3, Arrays.asList(new SectionFile.Section(2, 0, 0, 5, new byte[]{9, 9})));
+        file.close();
+        try (RandomAccessFile raw = new RandomAccessFile(file.getFile(), "rw")) {
+            raw.seek(28); // first index entry
+            raw.writeInt(1);
+        }
+        assertFalse(file.open(3));
+    }
+}
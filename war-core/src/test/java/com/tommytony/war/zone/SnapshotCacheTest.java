@@ -0,0 +1,50 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarLocation;
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+
+public class SnapshotCacheTest extends TestCase {
+    private static SnapshotCache.Entry entry() {
+        return new SnapshotCache.Entry(new WarLocation(0, 0, 0, "world"),
+                Collections.singletonMap(ZoneIndex.blockKey(0, 0, 0), new BlockVolume(16, 16, 16)));
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        long entrySize = entry().getSize();
+        SnapshotCache cache = new SnapshotCache(() -> entrySize * 2);
+        Warzone a = mock(Warzone.class), b = mock(Warzone.class), c = mock(Warzone.class);
+        cache.put(a, entry());
+        cache.put(b, entry());
+        assertNotNull(cache.get(a)); // b is now the least recently used
+        cache.put(c, entry());
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(c));
+        assertEquals(2, cache.getCachedZones());
+        assertEquals(entrySize * 2, cache.getSize());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    public void testInvalidateAndOversize() throws Exception {
+        long entrySize = entry().getSize();
+        SnapshotCache cache = new SnapshotCache(() -> entrySize);
+        Warzone zone = mock(Warzone.class);
+        cache.put(zone, entry());
+        cache.put(zone, entry()); // replaces, rather than evicting itself
+        assertEquals(entrySize, cache.getSize());
+        assertEquals(0, cache.getEvictions());
+        cache.invalidate(zone);
+        assertNull(cache.get(zone));
+        assertEquals(0, cache.getSize());
+
+        cache = new SnapshotCache(() -> entrySize - 1);
+        cache.put(zone, entry());
+        assertEquals(0, cache.getCachedZones());
+    }
+}
@@ -0,0 +1,88 @@
+package com.tommytony.war.zone;
+
+import junit.framework.TestCase;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Mockito.*;
+
+public class StorageWriterTest extends TestCase {
+    private Connection conn;
+    private StorageWriter writer;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        conn = mock(Connection.class);
+        writer = new StorageWriter("test", new StatementCache(conn), message -> {
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void testOrderAndClose() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        writer.submit(statements -> await(blocked));
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            writer.submit(statements -> applied.add(value));
+        }
+        assertTrue(writer.getPending() > 0);
+        blocked.countDown();
+        writer.close();
+        assertEquals(100, applied.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) applied.get(i));
+        }
+        verify(conn).close();
+        try {
+            writer.submit(statements -> {
+            });
+            fail("Writes after close should be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testFailedWriteKeepsBatch() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        writer.submit(statements -> await(blocked));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            futures.add(writer.submit(statements -> {
+                if (value == 5) {
+                    throw new SQLException("constraint failed");
+                }
+            }));
+        }
+        blocked.countDown();
+        writer.flush();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i == 5, futures.get(i).isCompletedExceptionally());
+        }
+        writer.close();
+    }
+
+    public void testErrorFailsOnlyItsWrite() throws Exception {
+        CompletableFuture<Void> failed = writer.submit(statements -> {
+            throw new OutOfMemoryError("encoding section");
+        });
+        CompletableFuture<Integer> read = writer.read(statements -> 42);
+        writer.flush();
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(42, (int) read.join());
+        writer.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.tommytony.war.zone;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.WarPlayer;
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarLocation;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class WarGameTest extends TestCase {
+    public void testGetTeam() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getTeams()).thenReturn(ImmutableList.of("Red", "blue"));
+        WarGame game = new WarGame(zone, mock(ServerAPI.class));
+        assertEquals("Red", game.getTeam("red").getName());
+        assertSame(game.getTeam("red"), game.getTeam("RED"));
+        assertEquals("blue", game.getTeam("Blue").getName());
+        assertNull(game.getTeam("green"));
+    }
+
+    public void testAutoAssign() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getTeams()).thenReturn(ImmutableList.of("red", "blue", "green"));
+        ZoneConfig config = mock(ZoneConfig.class);
+        when(config.getInt(ZoneSetting.MAXPLAYERS)).thenReturn(100);
+        when(zone.getConfig()).thenReturn(config);
+        when(zone.getGame()).thenReturn(Optional.empty());
+        ServerAPI plugin = mock(ServerAPI.class);
+        when(plugin.getGameRegistry()).thenReturn(new GameRegistry());
+        WarGame game = new WarGame(zone, plugin);
+
+        WarPlayer[] players = new WarPlayer[30];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = mock(WarPlayer.class);
+            when(players[i].getPlayerId()).thenReturn(UUID.randomUUID());
+            game.autoAssign(players[i]);
+        }
+        assertEquals(10, game.getTeam("red").getSize());
+        assertEquals(10, game.getTeam("blue").getSize());
+        assertEquals(10, game.getTeam("green").getSize());
+
+        for (WarPlayer player : players) {
+            if (game.getPlayerTeam(player) == game.getTeam("red")) {
+                game.removePlayer(player);
+            }
+        }
+        assertEquals(0, game.getTeam("red").getSize());
+        WarPlayer late = mock(WarPlayer.class);
+        when(late.getPlayerId()).thenReturn(UUID.randomUUID());
+        game.autoAssign(late);
+        assertSame(game.getTeam("red"), game.getPlayerTeam(late));
+    }
+
+    private void mockRestore(Warzone zone, List<BlockJournal> restores, List<CompletableFuture<Void>> futures) {
+        when(zone.restore(any(BlockJournal.class))).thenAnswer(invocation -> {
+            restores.add((BlockJournal) invocation.getArguments()[0]);
+            futures.add(new CompletableFuture<>());
+            return futures.get(futures.size() - 1);
+        });
+        when(zone.getRestoring()).thenAnswer(invocation -> futures.isEmpty() || futures.get(futures.size() - 1).isDone()
+                ? null : restores.get(restores.size() - 1));
+    }
+
+    public void testChangeDuringRestoreKeepsOriginal() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getTeams()).thenReturn(ImmutableList.of("red"));
+        ZoneConfig config = mock(ZoneConfig.class);
+        when(config.getInt(ZoneSetting.JOURNALSIZE)).thenReturn(100);
+        when(config.getInt(ZoneSetting.MAXROUNDS)).thenReturn(5);
+        when(zone.getConfig()).thenReturn(config);
+        List<BlockJournal> restores = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        mockRestore(zone, restores, futures);
+        WarGame game = new WarGame(zone, mock(ServerAPI.class));
+        WarLocation pending = new WarLocation(1, 2, 3, "world"), untouched = new WarLocation(4, 5, 6, "world");
+
+        game.recordBlockChange(pending, () -> new WarBlock("minecraft:stone", null, "", (short) 0));
+        game.endRound();
+        // broken again before the restore reaches it
+        game.recordBlockChange(pending, () -> new WarBlock("minecraft:air", null, "", (short) 0));
+        game.recordBlockChange(untouched, () -> new WarBlock("minecraft:dirt", null, "", (short) 0));
+        futures.get(0).complete(null);
+        game.endRound();
+        assertEquals("minecraft:stone", restores.get(1).getOriginal(1, 2, 3).getBlockName());
+        assertEquals("minecraft:dirt", restores.get(1).getOriginal(4, 5, 6).getBlockName());
+
+        // a round without changes still restores, clearing dropped items
+        futures.get(1).complete(null);
+        game.endRound();
+        assertEquals(3, restores.size());
+        assertEquals(0, restores.get(2).size());
+    }
+
+    public void testChangeDuringRestoreAfterGameOver() throws Exception {
+        Warzone zone = mock(Warzone.class);
+        when(zone.getTeams()).thenReturn(ImmutableList.of("red"));
+        ZoneConfig config = mock(ZoneConfig.class);
+        when(config.getInt(ZoneSetting.JOURNALSIZE)).thenReturn(100);
+        when(config.getInt(ZoneSetting.MAXROUNDS)).thenReturn(0);
+        when(zone.getConfig()).thenReturn(config);
+        List<BlockJournal> restores = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        mockRestore(zone, restores, futures);
+        WarLocation pending = new WarLocation(1, 2, 3, "world");
+
+        WarGame game = new WarGame(zone, mock(ServerAPI.class));
+        game.recordBlockChange(pending, () -> new WarBlock("minecraft:stone", null, "", (short) 0));
+        game.endRound();
+        // the next game starts before the last round of the previous one is restored
+        WarGame next = new WarGame(zone, mock(ServerAPI.class));
+        next.recordBlockChange(pending, () -> new WarBlock("minecraft:air", null, "", (short) 0));
+        futures.get(0).complete(null);
+        next.endRound();
+        assertEquals("minecraft:stone", restores.get(1).getOriginal(1, 2, 3).getBlockName());
+    }
+}
@@ -0,0 +1,93 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.ServerAPI;
+import com.tommytony.war.struct.WarBlock;
+import com.tommytony.war.struct.WarCuboid;
+import com.tommytony.war.struct.WarLocation;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ZoneCaptureTest extends TestCase {
+    private Map<WarLocation, String> world;
+    private Map<Integer, BlockVolume> written;
+    private boolean committed;
+    private boolean discarded;
+    private ZoneCapture capture;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        world = new HashMap<>();
+        written = new HashMap<>();
+        committed = false;
+        discarded = false;
+        ServerAPI plugin = mock(ServerAPI.class);
+        when(plugin.getBlock(anyString(), anyInt(), anyInt(), anyInt(), anyBoolean())).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            WarLocation location = new WarLocation((int) args[1], (int) args[2], (int) args[3], (String) args[0]);
+            return block(world.getOrDefault(location, "stone"));
+        });
+        // two sections along X, each 16x4x4 so that one step captures a whole section
+        WarCuboid cuboid = new WarCuboid(new WarLocation(100, 10, 200, "world"), new WarLocation(119, 13, 203, "world"));
+        ZoneCapture.Sink sink = new ZoneCapture.Sink() {
+            @Override
+            public void write(int sx, int sy, int sz, BlockVolume section) {
+                written.put(sx, section);
+            }
+
+            @Override
+            public CompletableFuture<Void> finish(boolean entireZone, int maxSx, int maxSy, int maxSz) {
+                assertTrue(entireZone);
+                assertEquals(1, maxSx);
+                committed = true;
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void discard() {
+                discarded = true;
+            }
+        };
+        capture = new ZoneCapture(plugin, cuboid, cuboid, sink);
+    }
+
+    private static WarBlock block(String name) {
+        return new WarBlock(name, null, "", (short) 0);
+    }
+
+    private void change(int x, int y, int z, String name) {
+        WarLocation location = new WarLocation(x, y, z, "world");
+        capture.record(x, y, z, () -> block(world.getOrDefault(location, "stone")));
+        world.put(location, name);
+    }
+
+    public void testPointInTime() throws Exception {
+        assertTrue(capture.step());
+        assertEquals(1, written.size());
+        change(101, 10, 200, "dirt"); // already captured
+        change(118, 11, 201, "dirt"); // not captured yet
+        change(118, 11, 201, "sand"); // only the first change counts
+        while (capture.step()) {
+        }
+        assertTrue(capture.getFuture().isDone());
+        assertTrue(committed);
+        assertEquals("stone", written.get(0).get(1, 0, 0).getBlockName());
+        assertEquals("stone", written.get(1).get(2, 1, 1).getBlockName());
+    }
+
+    public void testCancel() throws Exception {
+        assertTrue(capture.step());
+        capture.cancel();
+        assertTrue(capture.getFuture().isCompletedExceptionally());
+        assertFalse(committed);
+        assertTrue(discarded);
+    }
+}
@@ -0,0 +1,84 @@
+package com.tommytony.war.zone;
+
+import junit.framework.TestCase;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.mockito.AdditionalMatchers.not;
+import static org.mockito.Mockito.*;
+
+public class ZoneConfigTest extends TestCase {
+    private StatementCache mockDatabase(ResultSet settings) throws Exception {
+        Connection conn = mock(Connection.class);
+        when(conn.createStatement()).thenReturn(mock(Statement.class));
+        PreparedStatement load = mock(PreparedStatement.class);
+        when(conn.prepareStatement(startsWith("SELECT option, value"))).thenReturn(load);
+        when(load.executeQuery()).thenReturn(settings);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(conn.prepareStatement(not(startsWith("SELECT option, value")))).thenReturn(prepared);
+        when(prepared.executeQuery()).thenReturn(mock(ResultSet.class));
+        return new StatementCache(conn);
+    }
+
+    private StorageWriter mockWriter() throws Exception {
+        return new StorageWriter("test", mockDatabase(mock(ResultSet.class)), message -> {
+        });
+    }
+
+    public void testFallbackAndCaching() throws Exception {
+        ResultSet defaults = mock(ResultSet.class);
+        when(defaults.next()).thenReturn(true, false);
+        when(defaults.getString(1)).thenReturn("MAXPOINTS");
+        when(defaults.getInt(2)).thenReturn(20);
+        StatementCache defaultsDb = mockDatabase(defaults);
+        ZoneConfig parent = new ZoneConfig(defaultsDb, mockWriter(), "zone_settings");
+
+        ResultSet zone = mock(ResultSet.class);
+        when(zone.next()).thenReturn(true, false);
+        when(zone.getString(1)).thenReturn("EDITING");
+        when(zone.getString(2)).thenReturn("true");
+        StatementCache zoneDb = mockDatabase(zone);
+        ZoneConfig config = new ZoneConfig(zoneDb, mockWriter(), "settings", parent);
+
+        assertEquals(20, config.getInt(ZoneSetting.MAXPOINTS));
+        assertEquals(ZoneSetting.MAXPLAYERS.getDefaultValue(), config.getInt(ZoneSetting.MAXPLAYERS));
+        assertTrue(config.getBoolean(ZoneSetting.EDITING));
+        assertFalse(parent.getBoolean(ZoneSetting.EDITING));
+        assertEquals(20, config.getInt(ZoneSetting.MAXPOINTS));
+        // each level is read from the database only once
+        verify(zone, times(2)).next();
+        verify(defaults, times(2)).next();
+    }
+
+    public void testParentChangeInvalidatesChild() throws Exception {
+        ResultSet defaults = mock(ResultSet.class);
+        when(defaults.next()).thenReturn(false);
+        StorageWriter parentWriter = mockWriter();
+        ZoneConfig parent = new ZoneConfig(mockDatabase(defaults), parentWriter, "zone_settings");
+        ZoneConfig config = new ZoneConfig(mockDatabase(mock(ResultSet.class)), mockWriter(), "settings", parent);
+
+        assertEquals(ZoneSetting.MAXROUNDS.getDefaultValue(), config.getInt(ZoneSetting.MAXROUNDS));
+        parent.setInt(ZoneSetting.MAXROUNDS, 8);
+        assertEquals(8, config.getInt(ZoneSetting.MAXROUNDS));
+        // the change is kept in memory and written in the background, not read back
+        verify(defaults, times(1)).next();
+        parentWriter.flush();
+        verify(parentWriter.getStatements().getConnection()).prepareStatement(startsWith("INSERT INTO zone_settings"));
+    }
+
+    public void testStatementReuse() throws Exception {
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        StatementCache statements = new StatementCache(conn);
+        PreparedStatement stmt = statements.prepare("SELECT 1");
+        assertSame(stmt, statements.prepare("SELECT 1"));
+        verify(stmt).clearParameters();
+        assertNotSame(stmt, statements.prepare("SELECT 2"));
+        verify(conn, times(2)).prepareStatement(anyString());
+        statements.close();
+        verify(stmt).close();
+    }
+}
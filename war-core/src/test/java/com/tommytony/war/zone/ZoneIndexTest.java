@@ -0,0 +1,75 @@
+package com.tommytony.war.zone;
+
+import com.tommytony.war.struct.WarCuboid;
+import com.tommytony.war.struct.WarLocation;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ZoneIndexTest extends TestCase {
+    private ZoneIndex index;
+    private Warzone zone1;
+    private Warzone zone2;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        index = new ZoneIndex();
+        zone1 = mock(Warzone.class);
+        when(zone1.getCuboid()).thenReturn(new WarCuboid(new WarLocation(-20, 0, -20, "world"), new WarLocation(20, 128, 5, "world")));
+        zone2 = mock(Warzone.class);
+        // shares chunk columns with zone1
+        when(zone2.getCuboid()).thenReturn(new WarCuboid(new WarLocation(21, 0, 0, "world"), new WarLocation(40, 128, 40, "world")));
+        index.update(zone1);
+        index.update(zone2);
+    }
+
+    public void testGetZone() throws Exception {
+        assertSame(zone1, index.getZone(new WarLocation(0.5, 64, 0.5, "world")));
+        assertSame(zone1, index.getZone(new WarLocation(-20, 0, -20, "world")));
+        assertSame(zone1, index.getZone(new WarLocation(20.9, 64, 5.9, "world")));
+        assertSame(zone2, index.getZone(new WarLocation(21.1, 64, 5.9, "world")));
+        assertNull(index.getZone(new WarLocation(21.1, 64, -0.1, "world")));
+        assertNull(index.getZone(new WarLocation(0.5, 129, 0.5, "world")));
+        assertNull(index.getZone(new WarLocation(0.5, 64, 0.5, "world_nether")));
+        assertNull(index.getZone(new WarLocation(500, 64, 500, "world")));
+    }
+
+    public void testUpdateAndRemove() throws Exception {
+        when(zone1.getCuboid()).thenReturn(new WarCuboid(new WarLocation(100, 0, 100, "world"), new WarLocation(120, 10, 120, "world")));
+        index.update(zone1);
+        assertNull(index.getZone(new WarLocation(0.5, 64, 0.5, "world")));
+        assertSame(zone1, index.getZone(new WarLocation(110, 5, 110, "world")));
+
+        index.remove(zone1);
+        assertNull(index.getZone(new WarLocation(110, 5, 110, "world")));
+        assertNull(index.getCuboid(zone1));
+        assertSame(zone2, index.getZone(new WarLocation(30, 64, 30, "world")));
+    }
+
+    public void testGates() throws Exception {
+        when(zone1.getGates()).thenReturn(ImmutableMap.of(new WarLocation(-30, 64, -30, "world"), "autoassign",
+                new WarLocation(-30, 64, 30, "world"), "red"));
+        index.updateGates(zone1);
+        ZoneIndex.Gate gate = index.getGate(new WarLocation(-29.5, 64.2, -29.5, "world"));
+        assertNotNull(gate);
+        assertSame(zone1, gate.getZone());
+        assertEquals("autoassign", gate.getName());
+        assertEquals("red", index.getGate(new WarLocation(-30, 64, 30, "world")).getName());
+        assertNull(index.getGate(new WarLocation(-30, 65, -30, "world")));
+        assertNull(index.getGate(new WarLocation(-30, 64, -30, "world_nether")));
+
+        when(zone1.getGates()).thenReturn(ImmutableMap.of(new WarLocation(-30, 64, 30, "world"), "red"));
+        index.updateGates(zone1);
+        assertNull(index.getGate(new WarLocation(-30, 64, -30, "world")));
+        index.remove(zone1);
+        assertNull(index.getGate(new WarLocation(-30, 64, 30, "world")));
+    }
+
+    public void testBlockKey() throws Exception {
+        assertFalse(ZoneIndex.blockKey(-1, 0, 0) == ZoneIndex.blockKey(0, 0, -1));
+        assertFalse(ZoneIndex.blockKey(0, 255, 0) == ZoneIndex.blockKey(0, 0, 255));
+        assertFalse(ZoneIndex.blockKey(29999999, 0, 0) == ZoneIndex.blockKey(-29999999, 0, 0));
+    }
+}
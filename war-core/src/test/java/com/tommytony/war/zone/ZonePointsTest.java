@@ -0,0 +1,36 @@
+package com.tommytony.war.zone;
+
+import com.google.common.collect.ImmutableList;
+import com.tommytony.war.struct.WarLocation;
+import junit.framework.TestCase;
+
+public class ZonePointsTest extends TestCase {
+    public void testModel() throws Exception {
+        ZonePoints points = new ZonePoints();
+        points.put("position1", new WarLocation(0, 0, 0, "world"));
+        assertNull(points.getCuboid());
+        points.put("position2", new WarLocation(10, 10, 10, "world"));
+        assertEquals(11, (int) points.getCuboid().getSizeX());
+
+        points.put("teamspawnred", new WarLocation(1, 1, 1, "world"));
+        points.put("teamspawnblue", new WarLocation(2, 1, 1, "world"));
+        assertEquals(ImmutableList.of("red", "blue"), points.getTeams());
+        points.remove("teamspawnred");
+        assertEquals(ImmutableList.of("blue"), points.getTeams());
+
+        WarLocation gate = new WarLocation(-5, 1, -5, "world");
+        points.put("gateautoassign", gate);
+        assertEquals("autoassign", points.getGates().get(gate));
+        WarLocation moved = new WarLocation(-6, 1, -5, "world");
+        points.put("gateautoassign", moved);
+        assertNull(points.getGates().get(gate));
+        assertEquals("autoassign", points.getGates().get(moved));
+        assertSame(moved, points.get("gateautoassign"));
+
+        points.remove("position2");
+        assertNull(points.getCuboid());
+        points.clear();
+        assertNull(points.get("position1"));
+        assertTrue(points.getGates().isEmpty());
+    }
+}
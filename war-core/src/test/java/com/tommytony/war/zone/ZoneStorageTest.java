@@ -2,6 +2,16 @@ package com.tommytony.war.zone;
 
 import com.tommytony.war.struct.WarLocation;
 import junit.framework.TestCase;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Mockito.*;
 
@@ -17,4 +27,111 @@ public class ZoneStorageTest extends TestCase {
 
         assertEquals(pos2, storage.dbToWorld(storage.worldToDb(pos2)));
     }
-}
\ No newline at end of file
+
+    /**
+     * Mock a version 2 zone of 2x2x2 blocks from (100, 64, 200), with position1 at the upper corner, offset into the
+     * block as a player standing there would be. Rows are floor(block - position1), so they are all negative.
+     */
+    private Connection mockLegacyZone(boolean unknownId) throws Exception {
+        ResultSet bounds = mock(ResultSet.class);
+        when(bounds.next()).thenReturn(true);
+        when(bounds.getInt(1)).thenReturn(-2);
+        when(bounds.getInt(2)).thenReturn(-1);
+        when(bounds.getInt(3)).thenReturn(-2);
+        when(bounds.getInt(4)).thenReturn(-1);
+        when(bounds.getInt(5)).thenReturn(0);
+        when(bounds.getInt(6)).thenReturn(-1);
+        when(bounds.getInt(7)).thenReturn(8);
+
+        ResultSet ids = mock(ResultSet.class);
+        when(ids.next()).thenReturn(true, true, true, true, true, true, true, true, false);
+        when(ids.getInt("id")).thenReturn(0, 1, 2, 3, 4, 5, 6, 7);
+        when(ids.getString("name")).thenReturn("block0", "block1", "block2", "block3", "block4", "block5",
+                "block6", unknownId ? null : "block7");
+
+        ResultSet coordinates = mock(ResultSet.class);
+        when(coordinates.next()).thenReturn(true, true, true, false);
+        when(coordinates.getString("name")).thenReturn("position1", "position2", "red");
+        when(coordinates.getDouble("x")).thenReturn(101.5, -1.5, -1.0);
+        when(coordinates.getDouble("y")).thenReturn(65.0, -1.0, 0.0);
+        when(coordinates.getDouble("z")).thenReturn(201.5, -1.5, -1.0);
+
+        ResultSet rows = mock(ResultSet.class);
+        when(rows.next()).thenReturn(true, true, true, true, true, true, true, true, false);
+        when(rows.getInt("x")).thenReturn(-2, -2, -2, -2, -1, -1, -1, -1);
+        when(rows.getInt("y")).thenReturn(-1, -1, 0, 0, -1, -1, 0, 0);
+        when(rows.getInt("z")).thenReturn(-2, -1, -2, -1, -2, -1, -2, -1);
+        when(rows.getInt("id")).thenReturn(0, 1, 2, 3, 4, 5, 6, 7);
+
+        Statement stmt = mock(Statement.class);
+        when(stmt.executeQuery(startsWith("SELECT MIN"))).thenReturn(bounds);
+        when(stmt.executeQuery("SELECT id, name FROM block_ids")).thenReturn(ids);
+        when(stmt.executeQuery(contains("FROM coordinates"))).thenReturn(coordinates);
+        when(stmt.executeQuery(startsWith("SELECT x, y, z, id"))).thenReturn(rows);
+        Connection conn = mock(Connection.class);
+        when(conn.createStatement()).thenReturn(stmt);
+        return conn;
+    }
+
+    public void testMigrateBlockRowsFromUpperCorner() throws Exception {
+        Connection conn = mockLegacyZone(false);
+        PreparedStatement palette = mock(PreparedStatement.class);
+        when(conn.prepareStatement(startsWith("INSERT INTO block_palette"))).thenReturn(palette);
+        when(conn.prepareStatement(startsWith("INSERT INTO block_data"))).thenReturn(mock(PreparedStatement.class));
+        PreparedStatement volume = mock(PreparedStatement.class);
+        when(conn.prepareStatement(startsWith("INSERT INTO block_volume"))).thenReturn(volume);
+        PreparedStatement update = mock(PreparedStatement.class);
+        when(conn.prepareStatement(startsWith("UPDATE coordinates"))).thenReturn(update);
+
+        ZoneStorage.migrateBlockRows(conn);
+
+        verify(conn).commit();
+        verify(volume).setInt(1, 2);
+        verify(volume).setInt(2, 2);
+        verify(volume).setInt(3, 2);
+        ArgumentCaptor<String> names = ArgumentCaptor.forClass(String.class);
+        verify(palette, atLeastOnce()).setString(eq(2), names.capture());
+        ArgumentCaptor<byte[]> blocks = ArgumentCaptor.forClass(byte[].class);
+        verify(volume).setBytes(eq(4), blocks.capture());
+        BlockVolume migrated = new BlockVolume(2, 2, 2);
+        for (String name : names.getAllValues()) {
+            migrated.addPalette(name, (short) 0);
+        }
+        migrated.decode(blocks.getValue());
+        assertEquals("block0", migrated.get(0, 0, 0).getBlockName());
+        assertEquals("block3", migrated.get(0, 1, 1).getBlockName());
+        assertEquals("block4", migrated.get(1, 0, 0).getBlockName());
+        assertEquals("block7", migrated.get(1, 1, 1).getBlockName());
+
+        ArgumentCaptor<String> positions = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Double> xs = ArgumentCaptor.forClass(Double.class);
+        ArgumentCaptor<Double> ys = ArgumentCaptor.forClass(Double.class);
+        ArgumentCaptor<Double> zs = ArgumentCaptor.forClass(Double.class);
+        verify(update, times(3)).setString(eq(4), positions.capture());
+        verify(update, times(3)).setDouble(eq(1), xs.capture());
+        verify(update, times(3)).setDouble(eq(2), ys.capture());
+        verify(update, times(3)).setDouble(eq(3), zs.capture());
+        Map<String, WarLocation> stored = new HashMap<>();
+        List<String> positionNames = positions.getAllValues();
+        for (int i = 0; i < positionNames.size(); i++) {
+            stored.put(positionNames.get(i), new WarLocation(xs.getAllValues().get(i), ys.getAllValues().get(i),
+                    zs.getAllValues().get(i), null));
+        }
+        // position1 moves to the lowest block, and position2 to the corner position1 was at
+        assertEquals(new WarLocation(100, 64, 200, null), stored.get("position1"));
+        assertEquals(new WarLocation(1.5, 1, 1.5, null), stored.get("position2"));
+        // other positions stay where they were, at (100.5, 65, 200.5)
+        assertEquals(new WarLocation(0.5, 1, 0.5, null), stored.get("red"));
+    }
+
+    public void testMigrateBlockRowsUnknownId() throws Exception {
+        Connection conn = mockLegacyZone(true);
+        try {
+            ZoneStorage.migrateBlockRows(conn);
+            fail("Expected the migration to fail on a row with an unknown block id.");
+        } catch (SQLException e) {
+            verify(conn, never()).prepareStatement(anyString());
+            verify(conn, never()).commit();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.tommytony.war;
+
+import com.tommytony.war.struct.WarBlock;
+import org.spongepowered.api.world.World;
+
+/**
+ * Places batches of blocks in a Sponge world, looking up the world once and placing blocks without notifying
+ * neighboring blocks.
+ */
+class SpongeEditSession extends EditSession {
+    private final WarPlugin plugin;
+    private final World world;
+
+    SpongeEditSession(WarPlugin plugin, World world, boolean recordUndo) {
+        super(plugin, world.getName(), recordUndo);
+        this.plugin = plugin;
+        this.world = world;
+    }
+
+    @Override
+    protected WarBlock getBlock(int x, int y, int z) {
+        return plugin.getBlock(world.getLocation(x, y, z), false);
+    }
+
+    @Override
+    protected boolean placeBlock(int x, int y, int z, WarBlock block) {
+        return plugin.setBlock(world.getLocation(x, y, z), block);
+    }
+}
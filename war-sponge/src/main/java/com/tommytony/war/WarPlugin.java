@@ -3,17 +3,22 @@ package com.tommytony.war;
 import com.google.inject.Inject;
 import com.tommytony.war.item.WarEntity;
 import com.tommytony.war.item.WarItem;
+import com.tommytony.war.listener.BlockListener;
 import com.tommytony.war.listener.PlayerListener;
 import com.tommytony.war.struct.WarBlock;
 import com.tommytony.war.struct.WarCuboid;
 import com.tommytony.war.struct.WarLocation;
+import com.tommytony.war.zone.GameRegistry;
+import com.tommytony.war.zone.ResetScheduler;
+import com.tommytony.war.zone.SnapshotCache;
+import com.tommytony.war.zone.WarGame;
 import com.tommytony.war.zone.Warzone;
+import com.tommytony.war.zone.ZoneIndex;
 import com.tommytony.war.zone.ZoneValidator;
 import org.slf4j.Logger;
 import org.spongepowered.api.Game;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockSnapshot;
-import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockType;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.config.DefaultConfig;
@@ -25,6 +30,7 @@ import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.game.state.GameConstructionEvent;
 import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 import org.spongepowered.api.item.inventory.ItemStack;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.world.Location;
@@ -32,6 +38,7 @@ import org.spongepowered.api.world.World;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
@@ -53,6 +60,10 @@ public class WarPlugin implements ServerAPI {
 
     private WarConfig config;
     private Map<String, Warzone> zones;
+    private ZoneIndex zoneIndex;
+    private GameRegistry gameRegistry;
+    private ResetScheduler resetScheduler;
+    private SnapshotCache snapshotCache;
     private ZoneValidator validator;
     private YamlTranslator translator;
     private HashMap<UUID, SpongeWarPlayer> players;
@@ -67,6 +78,10 @@ public class WarPlugin implements ServerAPI {
             throw new InstantiationException("Failed to load SQLite database");
         }
         zones = new HashMap<>();
+        zoneIndex = new ZoneIndex();
+        gameRegistry = new GameRegistry();
+        resetScheduler = new ResetScheduler(this);
+        snapshotCache = new SnapshotCache(this);
         translator = new YamlTranslator();
         dataDir = dataDir.getParentFile();
         players = new HashMap<>();
@@ -79,15 +94,38 @@ public class WarPlugin implements ServerAPI {
         cmdManager = new SpongeCommandManager(this);
         cmdManager.registerCommands();
         game.getEventManager().registerListeners(this, new PlayerListener(this));
+        game.getEventManager().registerListeners(this, new BlockListener(this));
+        resetScheduler.start();
 
         if (!dataDir.exists() && !dataDir.mkdirs())
             throw new FileNotFoundException("Failed to make War data folder at " + dataDir.getPath());
-        config = new WarConfig(new File(dataDir, "war.sl3"));
+        config = new WarConfig(new File(dataDir, "war.sl3"), this::logInfo);
         validator = new ZoneValidator(config);
         for (String zoneName : config.getZones()) {
             logger.info("Loading zone " + zoneName + "...");
             Warzone zone = new Warzone(zoneName, this);
             zones.put(zoneName, zone);
+            zoneIndex.update(zone);
+        }
+    }
+
+    @Listener
+    public void onServerStopping(GameStoppingServerEvent event) {
+        for (Warzone zone : zones.values()) {
+            zone.getGame().ifPresent(WarGame::forceEndGame);
+        }
+        resetScheduler.finishAll(); // the scheduler stops with the server
+        for (Warzone zone : zones.values()) {
+            try {
+                zone.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close zone " + zone.getName(), e);
+            }
+        }
+        try {
+            config.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close War config", e);
         }
     }
 
@@ -113,6 +151,26 @@ public class WarPlugin implements ServerAPI {
         logger.info(message);
     }
 
+    @Override
+    public ZoneIndex getZoneIndex() {
+        return zoneIndex;
+    }
+
+    @Override
+    public GameRegistry getGameRegistry() {
+        return gameRegistry;
+    }
+
+    @Override
+    public ResetScheduler getResetScheduler() {
+        return resetScheduler;
+    }
+
+    @Override
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
     public Warzone getZone(String zoneName) {
         if (zones.containsKey(zoneName)) {
             return zones.get(zoneName);
@@ -125,6 +183,7 @@ public class WarPlugin implements ServerAPI {
             config.addZone(zoneName);
             Warzone zone = new Warzone(zoneName, this);
             zones.put(zoneName, zone);
+            zoneIndex.update(zone);
             return zone;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -134,7 +193,10 @@ public class WarPlugin implements ServerAPI {
     public String deleteZone(String zoneName) {
         try {
             Warzone zone = zones.remove(zoneName);
+            zoneIndex.remove(zone);
             config.deleteZone(zone.getName());
+            zone.getGame().ifPresent(WarGame::forceEndGame); // send players back to the lobby and out of the registry
+            resetScheduler.cancel(zone); // queued work would touch a zone that no longer exists
             zone.close();
             File trashDir = new File(dataDir, "trash");
             if (!trashDir.exists() && !trashDir.mkdirs()) {
@@ -200,22 +262,62 @@ public class WarPlugin implements ServerAPI {
 
     @Override
     public WarBlock getBlock(WarLocation location, boolean cheap) {
-        String serialized = "";
-        Map<String, Object> data = new HashMap<>();
-        Location<World> sloc = getSpongeLocation(location);
-        BlockState block = sloc.getBlock();
-        short meta = 0;
+        return getBlock(getSpongeLocation(location), cheap);
+    }
+
+    @Override
+    public WarBlock getBlock(String world, int x, int y, int z, boolean cheap) {
+        Optional<World> extent = this.getGame().getServer().getWorld(world);
+        if (!extent.isPresent()) {
+            throw new IllegalStateException("Can't find world with name " + world);
+        }
+        return getBlock(extent.get().getLocation(x, y, z), cheap);
+    }
+
+    WarBlock getBlock(Location<World> sloc, boolean cheap) {
         if (!cheap) {
-            // TODO test serialized interop with Bukkit
-            serialized = translator.translateData(sloc.createSnapshot().toContainer());
+            return getBlock(sloc.createSnapshot());
         }
-        String name = block.getType().getName();
+        return new WarBlock(sloc.getBlock().getType().getName(), new HashMap<>(), "", (short) 0);
+    }
+
+    /**
+     * Convert a block snapshot into a War block, including its serialized contents.
+     *
+     * @param snapshot block snapshot, such as the original block of a block change transaction.
+     * @return War block.
+     */
+    public WarBlock getBlock(BlockSnapshot snapshot) {
+        Map<String, Object> data = new HashMap<>();
+        short meta = 0;
+        // TODO test serialized interop with Bukkit
+        String serialized = translator.translateData(snapshot.toContainer());
+        String name = snapshot.getState().getType().getName();
         return new WarBlock(name, data, serialized, meta);
     }
 
     @Override
     public void setBlock(WarLocation location, WarBlock block) {
-        Location<World> sloc = getSpongeLocation(location);
+        setBlock(getSpongeLocation(location), block);
+    }
+
+    @Override
+    public EditSession openEditSession(String world, boolean recordUndo) {
+        Optional<World> extent = this.getGame().getServer().getWorld(world);
+        if (!extent.isPresent()) {
+            throw new IllegalStateException("Can't find world with name " + world);
+        }
+        return new SpongeEditSession(this, extent.get(), recordUndo);
+    }
+
+    /**
+     * Place a War block without notifying neighboring blocks.
+     *
+     * @param sloc  location of the block to change.
+     * @param block block to place.
+     * @return true if the block was changed, false if it already matched the block and its data.
+     */
+    boolean setBlock(Location<World> sloc, WarBlock block) {
         String blockName = block.getBlockName();
         // attempt to make blocks from Bukkit variant usable.
         if (!blockName.contains(":")) {
@@ -229,7 +331,12 @@ public class WarPlugin implements ServerAPI {
             DataContainer container = translator.translateFrom(block.getSerialized());
             Optional<BlockSnapshot> build = BlockSnapshot.builder().build(container);
             if (build.isPresent()) {
-                build.get().withLocation(sloc).restore(true, false);
+                BlockSnapshot target = build.get().withLocation(sloc);
+                BlockSnapshot current = sloc.createSnapshot();
+                if (current.getState().equals(target.getState()) && current.toContainer().equals(target.toContainer())) {
+                    return false; // already in place, a forced restore would report a change
+                }
+                return target.restore(true, false);
             }
 //                    .position(sloc.getBlockPosition())
 //                    .world(sloc.getExtent().getProperties())
@@ -237,6 +344,7 @@ public class WarPlugin implements ServerAPI {
 //                    .build().withContainer(container).restore(true, false);
         }
 //        sloc.setBlockType(type.get(), false);
+        return false;
     }
 
     @Override
@@ -282,6 +390,7 @@ public class WarPlugin implements ServerAPI {
                 transform.getPitch(), transform.getYaw());
     }
 
+    @Override
     public WarListener getListener() {
         return listener;
     }
@@ -0,0 +1,35 @@
+package com.tommytony.war.listener;
+
+import com.tommytony.war.WarPlugin;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.data.Transaction;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.block.ChangeBlockEvent;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
+
+import java.util.Optional;
+
+public class BlockListener {
+    private WarPlugin plugin;
+
+    public BlockListener(WarPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Listener(order = Order.POST)
+    public void onBlockChange(ChangeBlockEvent event) {
+        for (Transaction<BlockSnapshot> transaction : event.getTransactions()) {
+            if (!transaction.isValid()) {
+                continue;
+            }
+            BlockSnapshot original = transaction.getOriginal();
+            Optional<Location<World>> location = original.getLocation();
+            if (location.isPresent()) {
+                plugin.getListener().handleBlockChange(plugin.getWarLocation(location.get()),
+                        () -> plugin.getBlock(original));
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.tommytony.war.WarPlugin;
 import com.tommytony.war.struct.WarLocation;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.entity.DisplaceEntityEvent;
+import org.spongepowered.api.world.Location;
+import org.spongepowered.api.world.World;
 
 public class PlayerListener {
     private WarPlugin plugin;
@@ -15,6 +17,11 @@ public class PlayerListener {
 
     @Listener
     public void onPlayerMove(DisplaceEntityEvent.TargetPlayer event) {
+        Location<World> f = event.getFromTransform().getLocation(), t = event.getToTransform().getLocation();
+        if (!plugin.getListener().isBlockMovement(f.getExtent().getName(), f.getBlockX(), f.getBlockY(), f.getBlockZ(),
+                t.getExtent().getName(), t.getBlockX(), t.getBlockY(), t.getBlockZ())) {
+            return;
+        }
         WarPlayer player = plugin.getWarPlayer(event.getTargetEntity());
         WarLocation from = plugin.getWarLocation(event.getFromTransform());
         WarLocation to = plugin.getWarLocation(event.getToTransform());